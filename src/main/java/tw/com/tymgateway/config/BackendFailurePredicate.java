@@ -0,0 +1,53 @@
+package tw.com.tymgateway.config;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 判斷例外是否代表後端故障
+ *
+ * <p>只有 5xx、逾時與連線錯誤視為後端故障；4xx（驗證失敗、查無資料等）是客戶端的問題，
+ * 不應讓所有人共用的熔斷器開啟或收縮併發上限。會沿著 cause 往下找，例如異步等待逾時
+ * 被包裝後仍視為逾時。</p>
+ *
+ * <p>以 {@code recordFailurePredicate} 設定給 resilience4j 熔斷器（YAML 路由與異步代理共用），
+ * 並由 {@link tw.com.tymgateway.service.AdaptiveConcurrencyLimiter} 判斷是否為 drop。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+public class BackendFailurePredicate implements Predicate<Throwable> {
+
+    @Override
+    public boolean test(Throwable error) {
+        return isBackendFailure(error);
+    }
+
+    public static boolean isBackendFailure(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof WebClientResponseException responseEx) {
+                return responseEx.getStatusCode().is5xxServerError();
+            }
+            if (current instanceof RestClientResponseException responseEx) {
+                // YAML 路由：CircuitBreaker statusCodes 命中時拋出的 CircuitBreakerStatusCodeException（HttpStatusCodeException）
+                return responseEx.getStatusCode().is5xxServerError();
+            }
+            if (current instanceof ResponseStatusException statusEx) {
+                // YAML 路由：NettyRoutingFilter 逾時（504）
+                return statusEx.getStatusCode().is5xxServerError();
+            }
+            if (current instanceof WebClientRequestException
+                    || current instanceof TimeoutException
+                    || current instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,71 @@
+package tw.com.tymgateway.config;
+
+import java.time.Instant;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.service.JwksManager;
+import tw.com.tymgateway.util.ExpiresAtExpiry;
+import tw.com.tymgateway.util.HashUtil;
+
+/**
+ * 快取驗證結果的 JWT Decoder
+ *
+ * <p>同一個 access token 在一個 session 內會重複使用很多次；驗證通過的 {@link Jwt} 以 token 的
+ * SHA-256 為 key 保存到 {@code exp}，之後同一個 token 不再重新解析與驗證 RSA 簽章。
+ * 容量以筆數限制（{@code gateway.jwt-cache.max-entries}），JWKS 金鑰變更時整個清空。
+ * 驗證失敗的結果不快取。</p>
+ *
+ * <p>命中率等以 {@code gateway.jwt.cache.*} 輸出。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+
+    private final ReactiveJwtDecoder delegate;
+    private final Cache<String, Jwt> cache;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, JwksManager jwksManager,
+            MeterRegistry meterRegistry, long maxEntries) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new ExpiresAtExpiry<String, Jwt>(CachingReactiveJwtDecoder::expiresAtMillis))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.jwt.cache");
+        jwksManager.addKeySetChangeListener(cache::invalidateAll);
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) throws JwtException {
+        String key = HashUtil.sha256(token);
+        Jwt cached = cache.getIfPresent(key);
+        if (cached != null && isUnexpired(cached)) {
+            return Mono.just(cached);
+        }
+        return delegate.decode(token)
+                .doOnNext(jwt -> {
+                    if (jwt.getExpiresAt() != null) {
+                        cache.put(key, jwt);
+                    }
+                });
+    }
+
+    private static boolean isUnexpired(Jwt jwt) {
+        return jwt.getExpiresAt() != null && Instant.now().isBefore(jwt.getExpiresAt());
+    }
+
+    private static long expiresAtMillis(Jwt jwt) {
+        return jwt.getExpiresAt() != null ? jwt.getExpiresAt().toEpochMilli() : 0;
+    }
+}
@@ -1,17 +1,41 @@
 package tw.com.tymgateway.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.reactive.CorsWebFilter;
 import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+import tw.com.tymgateway.filter.BackendLoadBalancerFilter;
+import tw.com.tymgateway.service.BackendInstanceSelector;
+
+import java.net.URI;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Gateway 配置類
@@ -21,6 +45,8 @@ import java.util.List;
  *   <li>CORS 跨域配置</li>
  *   <li>過濾器配置</li>
  *   <li>路由動態配置</li>
+ *   <li>後端連線池（異步代理與 YAML 路由共用）</li>
+ *   <li>異步代理的後端負載平衡</li>
  * </ul>
  *
  * @author TY Team
@@ -29,6 +55,10 @@ import java.util.List;
 @Configuration
 public class GatewayConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(GatewayConfig.class);
+
+    private static final String GATEWAY_HTTPCLIENT_PREFIX = "spring.cloud.gateway.httpclient.";
+
 /**
  * CORS 過濾器配置，使用最高優先級確保在認證過濾器之前執行
  */
@@ -58,36 +88,199 @@ public CorsWebFilter corsWebFilter() {
     @Value("${PUBLIC_TYMB_URL:http://localhost:8080}")
     private String backendServiceUrl;
 
+    @Value("${gateway.backend.pool.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${gateway.backend.pool.pending-acquire-max-count:500}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${gateway.backend.pool.pending-acquire-timeout-ms:5000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${gateway.backend.pool.max-idle-time-seconds:30}")
+    private long maxIdleTimeSeconds;
+
+    @Value("${gateway.backend.pool.max-life-time-seconds:300}")
+    private long maxLifeTimeSeconds;
+
+    @Value("${gateway.backend.pool.evict-interval-seconds:30}")
+    private long evictIntervalSeconds;
+
+    /** 後端連線協定：http1、h2c（明文 HTTP/2，prior knowledge）或 h2（TLS + ALPN） */
+    @Value("${gateway.backend.http2.mode:http1}")
+    private String backendProtocolMode;
+
+    @Value("${gateway.backend.http2.max-connections:4}")
+    private int http2MaxConnections;
+
+    @Value("${gateway.backend.http2.min-connections:1}")
+    private int http2MinConnections;
+
+    @Value("${gateway.backend.http2.max-concurrent-streams:100}")
+    private long http2MaxConcurrentStreams;
+
+    @Value("${gateway.backend.async-proxy-load-balancing:false}")
+    private boolean asyncProxyLoadBalancing;
+
+    @Value("${gateway.backend.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${gateway.backend.response-timeout-seconds:30}")
+    private long responseTimeoutSeconds;
+
+    /**
+     * 後端專用連線池
+     *
+     * <p>限制最大連線數與等待取得連線的隊列長度，閒置連線與存活過久的連線會在背景回收
+     * （後端 Pod 滾動更新後不會一直黏在舊連線上）。啟用後以
+     * {@code reactor.netty.connection.provider.*} 指標輸出到 Micrometer。</p>
+     *
+     * <p>使用 HTTP/2 時改以 {@link Http2AllocationStrategy} 配置：少量連線、每條連線多路複用多個 stream。</p>
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider backendConnectionProvider() {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("backend");
+        if (isBackendHttp2()) {
+            // 不可再呼叫 maxConnections()：它會把 allocationStrategy 重設為 null，退回 HTTP/1 式的連線池
+            builder.allocationStrategy(Http2AllocationStrategy.builder()
+                    .maxConnections(http2MaxConnections)
+                    .minConnections(http2MinConnections)
+                    .maxConcurrentStreams(http2MaxConcurrentStreams)
+                    .build());
+            logger.info("後端連線池使用 HTTP/2 ({}): 每個實例最多 {} 條連線、每條連線 {} 個 stream",
+                    backendProtocolMode, http2MaxConnections, http2MaxConcurrentStreams);
+        } else {
+            builder.maxConnections(maxConnections);
+            logger.info("後端連線池使用 HTTP/1.1: 每個實例最多 {} 條連線", maxConnections);
+        }
+        return builder
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(evictIntervalSeconds))
+                .lifo()
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * 後端 HttpClient
+     *
+     * <p>宣告為 {@link HttpClient} Bean 後，Spring Cloud Gateway 的 NettyRoutingFilter 也會使用它，
+     * 讓 YAML 路由與異步代理共用同一個連線池。</p>
+     *
+     * <p>因此 {@code spring.cloud.gateway.httpclient.*}（連線逾時、連線池、SSL、proxy、wiretap 等）
+     * 不再套用，改以 {@code gateway.backend.*} 設定；只有 {@code response-timeout} 仍由 NettyRoutingFilter
+     * 作為外層逾時使用。設定了其他 {@code httpclient} 屬性時於啟動時警告。</p>
+     */
+    @Bean
+    @Primary
+    public HttpClient backendHttpClient(
+            ConnectionProvider backendConnectionProvider,
+            @Qualifier("backendLoopResources") LoopResources backendLoopResources,
+            NettyResourcesConfig nettyResourcesConfig,
+            ConfigurableEnvironment environment) {
+        warnIgnoredHttpClientProperties(environment);
+        return HttpClient.create(backendConnectionProvider)
+                .runOn(backendLoopResources, nettyResourcesConfig.useNative())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .protocol(backendProtocols())
+                .responseTimeout(Duration.ofSeconds(responseTimeoutSeconds));
+    }
+
+    private static void warnIgnoredHttpClientProperties(ConfigurableEnvironment environment) {
+        Set<String> ignored = new TreeSet<>();
+        for (PropertySource<?> source : environment.getPropertySources()) {
+            if (source instanceof EnumerablePropertySource<?> enumerable) {
+                for (String name : enumerable.getPropertyNames()) {
+                    if (name.startsWith(GATEWAY_HTTPCLIENT_PREFIX)
+                            && !name.equals(GATEWAY_HTTPCLIENT_PREFIX + "response-timeout")) {
+                        ignored.add(name);
+                    }
+                }
+            }
+        }
+        if (!ignored.isEmpty()) {
+            logger.warn("後端使用 gateway.backend.* 設定的 HttpClient，以下設定不會生效: {}", ignored);
+        }
+    }
+
+    private boolean isBackendHttp2() {
+        return "h2c".equalsIgnoreCase(backendProtocolMode) || "h2".equalsIgnoreCase(backendProtocolMode);
+    }
+
+    private HttpProtocol[] backendProtocols() {
+        if ("h2c".equalsIgnoreCase(backendProtocolMode)) {
+            return new HttpProtocol[] {HttpProtocol.H2C};
+        }
+        if ("h2".equalsIgnoreCase(backendProtocolMode)) {
+            // TLS 透過 ALPN 協商，後端不支援 HTTP/2 時退回 HTTP/1.1
+            return new HttpProtocol[] {HttpProtocol.H2, HttpProtocol.HTTP11};
+        }
+        return new HttpProtocol[] {HttpProtocol.HTTP11};
+    }
+
     /**
      * WebClient for making HTTP requests to backend
+     *
+     * <p>Keycloak 使用另外的 {@code keycloakWebClient}（見 {@link KeycloakClientConfig}）。</p>
+     *
+     * <p>{@code gateway.backend.async-proxy-load-balancing} 開啟時，送往 {@code PUBLIC_TYMB_URL} host 的請求
+     * 改送到 {@code gateway.backend.instances} / {@code dns-name} 的實例；預設關閉，異步代理仍直接呼叫
+     * {@code PUBLIC_TYMB_URL}（兩者在多數部署中指向不同位址，需確認實例清單後再開啟）。</p>
      */
     @Bean
-    public WebClient webClient() {
-        return WebClient.builder()
+    @Primary
+    public WebClient webClient(HttpClient backendHttpClient, BackendInstanceSelector backendInstanceSelector) {
+        WebClient.Builder builder = WebClient.builder()
                 .baseUrl(backendServiceUrl)
-                .build();
+                .clientConnector(new ReactorClientHttpConnector(backendHttpClient));
+        if (asyncProxyLoadBalancing) {
+            builder.filter(loadBalancing(backendInstanceSelector));
+            logger.info("異步代理負載平衡已啟用: {} -> {}", backendServiceUrl, backendInstanceSelector.getInstanceUris());
+        }
+        return builder.build();
     }
 
     /**
-     * WebClient.Builder bean for creating WebClient instances
-     * Used by KeycloakController and other components
-     * 
-     * Configured with:
-     * - Connection timeout: 10 seconds
-     * - Response timeout: 30 seconds
-     * - Retry on connection errors
+     * 把送往後端 host 的請求改寫到 {@link BackendInstanceSelector} 選出的實例（保留 path 與 query），
+     * 並回報延遲與成功與否；其他 host 的請求不受影響。
      */
-    @Bean
-    public WebClient.Builder webClientBuilder() {
-        return WebClient.builder()
-                .clientConnector(new org.springframework.http.client.reactive.ReactorClientHttpConnector(
-                    reactor.netty.http.client.HttpClient.create()
-                        .responseTimeout(java.time.Duration.ofSeconds(30))
-                        .option(io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)
-                        .doOnConnected(conn -> 
-                            conn.addHandlerLast(new io.netty.handler.timeout.ReadTimeoutHandler(30))
-                        )
-                ));
+    private ExchangeFilterFunction loadBalancing(BackendInstanceSelector selector) {
+        String backendHost = URI.create(backendServiceUrl).getHost();
+        return (request, next) -> {
+            if (!request.url().getHost().equalsIgnoreCase(backendHost)) {
+                return next.exchange(request);
+            }
+            return selector.choose()
+                    .map(instance -> {
+                        ClientRequest routed = ClientRequest.from(request)
+                                .url(BackendLoadBalancerFilter.rewrite(request.url(), instance.getBaseUri()))
+                                .build();
+                        long start = instance.begin();
+                        AtomicBoolean done = new AtomicBoolean();
+                        return next.exchange(routed)
+                                .doOnNext(response -> {
+                                    if (done.compareAndSet(false, true)) {
+                                        instance.end(start, !response.statusCode().is5xxServerError());
+                                    }
+                                })
+                                .doOnError(error -> {
+                                    if (done.compareAndSet(false, true)) {
+                                        instance.end(start, false);
+                                    }
+                                })
+                                .doOnCancel(() -> {
+                                    if (done.compareAndSet(false, true)) {
+                                        instance.cancel();
+                                    }
+                                });
+                    })
+                    .orElseGet(() -> next.exchange(request));
+        };
     }
 
 }
@@ -0,0 +1,196 @@
+package tw.com.tymgateway.config;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutException;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientRequest;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Keycloak 專用 HTTP 客戶端配置
+ *
+ * <p>OAuth 流程（token、userinfo、introspect、logout）與 JWKS 共用一個長期存在的
+ * {@code keycloakWebClient}：</p>
+ * <ul>
+ *   <li>獨立的連線池（{@code gateway.keycloak.pool.*}），不會佔用後端代理的連線</li>
+ *   <li>在 keycloak event loop 上執行，保持 keep-alive</li>
+ *   <li>依端點設定回應逾時（{@code gateway.keycloak.timeouts.*}）</li>
+ *   <li>每個端點的延遲與結果以 {@code gateway.keycloak.requests}（tag: endpoint、outcome）輸出</li>
+ * </ul>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Configuration
+public class KeycloakClientConfig {
+
+    @Value("${gateway.keycloak.pool.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${gateway.keycloak.pool.pending-acquire-max-count:200}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${gateway.keycloak.pool.pending-acquire-timeout-ms:3000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${gateway.keycloak.pool.max-idle-time-seconds:60}")
+    private long maxIdleTimeSeconds;
+
+    @Value("${gateway.keycloak.pool.max-life-time-seconds:600}")
+    private long maxLifeTimeSeconds;
+
+    @Value("${gateway.keycloak.connect-timeout-ms:3000}")
+    private int connectTimeoutMs;
+
+    @Value("${gateway.keycloak.timeouts.token-ms:5000}")
+    private long tokenTimeoutMs;
+
+    @Value("${gateway.keycloak.timeouts.userinfo-ms:3000}")
+    private long userinfoTimeoutMs;
+
+    @Value("${gateway.keycloak.timeouts.introspect-ms:3000}")
+    private long introspectTimeoutMs;
+
+    @Value("${gateway.keycloak.timeouts.logout-ms:5000}")
+    private long logoutTimeoutMs;
+
+    @Value("${gateway.keycloak.timeouts.jwks-ms:5000}")
+    private long jwksTimeoutMs;
+
+    @Value("${gateway.keycloak.timeouts.default-ms:10000}")
+    private long defaultTimeoutMs;
+
+    /**
+     * Keycloak 專用連線池
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider keycloakConnectionProvider() {
+        return ConnectionProvider.builder("keycloak")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(30))
+                .lifo()
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * Keycloak WebClient（KeycloakController、JwksManager 共用）
+     */
+    @Bean
+    public WebClient keycloakWebClient(
+            ConnectionProvider keycloakConnectionProvider,
+            @Qualifier("keycloakLoopResources") LoopResources keycloakLoopResources,
+            NettyResourcesConfig nettyResourcesConfig,
+            MeterRegistry meterRegistry) {
+        HttpClient httpClient = HttpClient.create(keycloakConnectionProvider)
+                .runOn(keycloakLoopResources, nettyResourcesConfig.useNative())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(Duration.ofMillis(defaultTimeoutMs));
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(timeoutsAndMetrics(meterRegistry))
+                .build();
+    }
+
+    /**
+     * 依端點套用回應逾時，並記錄延遲與結果
+     */
+    private ExchangeFilterFunction timeoutsAndMetrics(MeterRegistry meterRegistry) {
+        return (request, next) -> {
+            String endpoint = endpointOf(request.url().getPath());
+            Duration timeout = timeoutOf(endpoint);
+            ClientRequest timed = ClientRequest.from(request)
+                    .httpRequest(httpRequest -> {
+                        HttpClientRequest nativeRequest = httpRequest.getNativeRequest();
+                        nativeRequest.responseTimeout(timeout);
+                    })
+                    .build();
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return next.exchange(timed)
+                    .doOnNext(response -> sample.stop(timer(meterRegistry, endpoint,
+                            response.statusCode().is2xxSuccessful() || response.statusCode().is3xxRedirection()
+                                    ? "success"
+                                    : response.statusCode().is4xxClientError() ? "client_error" : "server_error")))
+                    .doOnError(error -> sample.stop(timer(meterRegistry, endpoint,
+                            hasCause(error, TimeoutException.class) || hasCause(error, ReadTimeoutException.class)
+                                    ? "timeout"
+                                    : "error")));
+        };
+    }
+
+    private Timer timer(MeterRegistry meterRegistry, String endpoint, String outcome) {
+        return Timer.builder("gateway.keycloak.requests")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .description("Keycloak 請求延遲")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    private Duration timeoutOf(String endpoint) {
+        long millis = switch (endpoint) {
+            case "token" -> tokenTimeoutMs;
+            case "userinfo" -> userinfoTimeoutMs;
+            case "introspect" -> introspectTimeoutMs;
+            case "logout" -> logoutTimeoutMs;
+            case "jwks" -> jwksTimeoutMs;
+            default -> defaultTimeoutMs;
+        };
+        return Duration.ofMillis(millis);
+    }
+
+    /**
+     * 由 OpenID Connect 端點路徑判斷端點名稱（/realms/{realm}/protocol/openid-connect/...）
+     */
+    private static String endpointOf(String path) {
+        if (path.endsWith("/token/introspect")) {
+            return "introspect";
+        }
+        if (path.endsWith("/token")) {
+            return "token";
+        }
+        if (path.endsWith("/userinfo")) {
+            return "userinfo";
+        }
+        if (path.endsWith("/logout")) {
+            return "logout";
+        }
+        if (path.endsWith("/certs")) {
+            return "jwks";
+        }
+        if (path.contains("/.well-known/")) {
+            return "discovery";
+        }
+        return "other";
+    }
+
+    private static boolean hasCause(Throwable error, Class<? extends Throwable> type) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (type.isInstance(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
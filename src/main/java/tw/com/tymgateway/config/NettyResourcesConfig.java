@@ -0,0 +1,94 @@
+package tw.com.tymgateway.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.netty.channel.epoll.Epoll;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Reactor Netty 傳輸層與 Event Loop 配置
+ *
+ * <p>Linux 上使用 native epoll 傳輸（無法載入時退回 NIO），並把 event loop 分成三組，
+ * 避免 Keycloak 或後端的慢呼叫拖慢 ingress：</p>
+ * <ul>
+ *   <li>{@code gw-ingress}：接收客戶端請求（Reactor Netty Server）</li>
+ *   <li>{@code gw-backend}：Gateway → Backend（YAML 路由與異步代理共用的 HttpClient）</li>
+ *   <li>{@code gw-keycloak}：Gateway → Keycloak</li>
+ * </ul>
+ *
+ * <p>各組執行緒數可依 Pod 的 CPU limit 調整，未設定時依可用處理器數計算。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Configuration
+public class NettyResourcesConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyResourcesConfig.class);
+
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+    @Value("${gateway.netty.prefer-native:true}")
+    private boolean preferNative;
+
+    @Value("${gateway.netty.ingress-threads:0}")
+    private int ingressThreads;
+
+    @Value("${gateway.netty.backend-threads:0}")
+    private int backendThreads;
+
+    @Value("${gateway.netty.keycloak-threads:1}")
+    private int keycloakThreads;
+
+    /**
+     * 是否使用 native 傳輸（設定允許且 epoll 可用）
+     */
+    public boolean useNative() {
+        return preferNative && LoopResources.hasNativeSupport();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public LoopResources ingressLoopResources() {
+        logTransport();
+        return LoopResources.create("gw-ingress", 1, threads(ingressThreads, Math.max(2, PROCESSORS)), true);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public LoopResources backendLoopResources() {
+        return LoopResources.create("gw-backend", threads(backendThreads, Math.max(2, PROCESSORS)), true);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public LoopResources keycloakLoopResources() {
+        return LoopResources.create("gw-keycloak", threads(keycloakThreads, 1), true);
+    }
+
+    /**
+     * 讓內嵌的 Reactor Netty Server 使用 ingress event loop
+     */
+    @Bean
+    public NettyServerCustomizer ingressLoopCustomizer(@Qualifier("ingressLoopResources") LoopResources ingressLoopResources) {
+        return server -> server.runOn(ingressLoopResources, useNative());
+    }
+
+    private int threads(int configured, int fallback) {
+        return configured > 0 ? configured : fallback;
+    }
+
+    private void logTransport() {
+        if (!preferNative) {
+            logger.info("Reactor Netty 傳輸: NIO（gateway.netty.prefer-native=false）");
+        } else if (Epoll.isAvailable()) {
+            logger.info("Reactor Netty 傳輸: native epoll");
+        } else {
+            logger.info("Reactor Netty 傳輸: NIO（epoll 無法使用: {}）",
+                    Epoll.unavailabilityCause() != null ? Epoll.unavailabilityCause().getMessage() : "unknown");
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package tw.com.tymgateway.config;
+
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
+import org.springframework.cloud.client.circuitbreaker.Customizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+
+/**
+ * 熔斷與隔艙配置
+ *
+ * <p>熔斷器、隔艙與 TimeLimiter 皆定義於 application.yml 的 {@code resilience4j.*}，
+ * 每個後端模組（people、weapons、gallery、deckofcards）各自一組實例。</p>
+ *
+ * <p>YAML 路由的 {@code CircuitBreaker} 過濾器與異步代理共用同一個 {@link CircuitBreakerRegistry}，
+ * 因此同一模組不論走哪條路徑，都共享同一個熔斷狀態。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Configuration
+public class ResilienceConfig {
+
+    /**
+     * 讓 Spring Cloud CircuitBreaker 依名稱套用 application.yml 中的實例配置，
+     * 避免落回預設的 1 秒 TimeLimiter
+     */
+    @Bean
+    public Customizer<ReactiveResilience4JCircuitBreakerFactory> moduleCircuitBreakerCustomizer(
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            TimeLimiterRegistry timeLimiterRegistry) {
+        return factory -> factory.configureDefault(id -> new Resilience4JConfigBuilder(id)
+                .circuitBreakerConfig(circuitBreakerRegistry.circuitBreaker(id).getCircuitBreakerConfig())
+                .timeLimiterConfig(timeLimiterRegistry.timeLimiter(id).getTimeLimiterConfig())
+                .build());
+    }
+}
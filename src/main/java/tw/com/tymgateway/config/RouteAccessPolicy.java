@@ -0,0 +1,278 @@
+package tw.com.tymgateway.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.security.authorization.AuthenticatedReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 路由存取規則（公開 / 需要 Token）
+ *
+ * <p>規則以與 {@code pathMatchers(...).permitAll()} 相同的順序宣告（先符合者優先），
+ * 建立時編譯成以路徑段落為節點的前綴樹，每個節點依 HTTP 方法保存符合該前綴的最小規則序號；
+ * 每個請求只走一次路徑段落即可得到與逐條比對相同的結果。</p>
+ *
+ * <p>只支援 {@code /a/b}（完全相同）與 {@code /a/b/**}（前綴）兩種寫法。建立時會以
+ * {@link PathPatternParser#defaultInstance}（Spring Security {@code pathMatchers} 使用的解析器）
+ * 逐條比對一批樣本路徑，結果不一致時記錄錯誤並改用逐條比對。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+public class RouteAccessPolicy implements ReactiveAuthorizationManager<AuthorizationContext> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteAccessPolicy.class);
+
+    public enum Access {
+        PERMIT_ALL,
+        AUTHENTICATED
+    }
+
+    private record Rule(HttpMethod method, String pattern, Access access, PathPattern pathPattern) {
+    }
+
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    /** 非標準 HTTP 方法共用的索引（只符合不限方法的規則） */
+    private static final int OTHER_METHOD = METHODS.length;
+
+    private static final int NO_RULE = Integer.MAX_VALUE;
+
+    private static final Mono<AuthorizationDecision> GRANTED = Mono.just(new AuthorizationDecision(true));
+
+    private final List<Rule> rules;
+    private final Access defaultAccess;
+    private final Node root = new Node();
+    private final boolean compiled;
+
+    private final AuthenticatedReactiveAuthorizationManager<AuthorizationContext> authenticated =
+            AuthenticatedReactiveAuthorizationManager.authenticated();
+
+    private RouteAccessPolicy(List<Rule> rules, Access defaultAccess) {
+        this.rules = List.copyOf(rules);
+        this.defaultAccess = defaultAccess;
+        for (int i = 0; i < this.rules.size(); i++) {
+            insert(i, this.rules.get(i));
+        }
+        List<String> mismatches = verify();
+        if (!mismatches.isEmpty()) {
+            logger.error("路由存取規則前綴樹與逐條比對結果不一致，改用逐條比對: {}", mismatches);
+        }
+        this.compiled = mismatches.isEmpty();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Mono<AuthorizationDecision> check(Mono<Authentication> authentication, AuthorizationContext context) {
+        PathContainer path = context.getExchange().getRequest().getPath().pathWithinApplication();
+        HttpMethod method = context.getExchange().getRequest().getMethod();
+        if (decide(method, path) == Access.PERMIT_ALL) {
+            return GRANTED;
+        }
+        return authenticated.check(authentication, context);
+    }
+
+    /**
+     * 決定請求的存取規則
+     */
+    public Access decide(HttpMethod method, PathContainer path) {
+        return compiled ? lookup(method, path) : decideOrdered(method, path);
+    }
+
+    /**
+     * 以前綴樹查詢：沿路取符合前綴規則的最小序號，走到最後一段時再比較完全相同的規則
+     */
+    Access lookup(HttpMethod method, PathContainer path) {
+        int slot = slotOf(method);
+        Node node = root;
+        int best = node.prefix[slot];
+        List<PathContainer.Element> elements = path.elements();
+        int size = elements.size();
+        if (size > 0 && !(elements.get(0) instanceof PathContainer.Separator)) {
+            // 規則都以 "/" 開頭，PathPattern 不會符合沒有開頭 "/" 的路徑
+            return defaultAccess;
+        }
+        for (int i = 0; i < size; i++) {
+            String segment;
+            if (elements.get(i) instanceof PathContainer.PathSegment pathSegment) {
+                segment = pathSegment.valueToMatch();
+            } else if (i + 1 == size ? i > 0 : elements.get(i + 1) instanceof PathContainer.Separator) {
+                // 結尾的 "/" 或連續的 "//" 視為空段落（與 PathPattern 相同，不符合完全相同的規則）
+                segment = "";
+            } else {
+                continue;
+            }
+            node = node.children.get(segment);
+            if (node == null) {
+                return accessOf(best);
+            }
+            best = Math.min(best, node.prefix[slot]);
+        }
+        return accessOf(Math.min(best, node.exact[slot]));
+    }
+
+    /**
+     * 逐條比對（與 {@code pathMatchers} 鏈相同的行為）
+     */
+    Access decideOrdered(HttpMethod method, PathContainer path) {
+        for (Rule rule : rules) {
+            if ((rule.method() == null || rule.method().equals(method)) && rule.pathPattern().matches(path)) {
+                return rule.access();
+            }
+        }
+        return defaultAccess;
+    }
+
+    /**
+     * 以規則衍生的樣本路徑比對前綴樹與逐條比對的結果
+     *
+     * @return 不一致的項目（method path），全部一致時為空
+     */
+    List<String> verify() {
+        List<HttpMethod> methods = new ArrayList<>(Arrays.asList(METHODS));
+        methods.add(HttpMethod.valueOf("PROPFIND"));
+        List<String> mismatches = new ArrayList<>();
+        for (String sample : samplePaths()) {
+            PathContainer path = PathContainer.parsePath(sample);
+            for (HttpMethod method : methods) {
+                if (lookup(method, path) != decideOrdered(method, path)) {
+                    mismatches.add(method.name() + " " + sample);
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    private Set<String> samplePaths() {
+        Set<String> samples = new LinkedHashSet<>(List.of("/", "//", "/unknown", "/unknown/", "/tymg", "/tymg/"));
+        for (Rule rule : rules) {
+            String base = basePath(rule.pattern());
+            String parent = base.isEmpty() ? "" : base.substring(0, base.lastIndexOf('/'));
+            samples.add(base.isEmpty() ? "/" : base);
+            samples.add(base + "/");
+            samples.add(base + "/x");
+            samples.add(base + "/x/y");
+            samples.add(base + "//x");
+            samples.add(base + "x");
+            samples.add(base + ";v=1/x");
+            samples.add(parent + "/other");
+            samples.add(parent + "/other/x");
+        }
+        return samples;
+    }
+
+    private void insert(int index, Rule rule) {
+        String pattern = rule.pattern();
+        boolean prefix = pattern.endsWith("/**");
+        String base = basePath(pattern);
+        if (!pattern.startsWith("/") || base.indexOf('*') >= 0 || base.indexOf('?') >= 0 || base.indexOf('{') >= 0) {
+            throw new IllegalArgumentException("不支援的路徑規則: " + pattern);
+        }
+        Node node = root;
+        if (!base.isEmpty()) {
+            for (String segment : base.substring(1).split("/", -1)) {
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+            }
+        }
+        int[] slots = prefix ? node.prefix : node.exact;
+        if (rule.method() == null) {
+            for (int slot = 0; slot < slots.length; slot++) {
+                slots[slot] = Math.min(slots[slot], index);
+            }
+        } else {
+            int slot = slotOf(rule.method());
+            slots[slot] = Math.min(slots[slot], index);
+        }
+    }
+
+    private Access accessOf(int ruleIndex) {
+        return ruleIndex == NO_RULE ? defaultAccess : rules.get(ruleIndex).access();
+    }
+
+    private static String basePath(String pattern) {
+        if (pattern.endsWith("/**")) {
+            return pattern.substring(0, pattern.length() - 3);
+        }
+        return "/".equals(pattern) ? "" : pattern;
+    }
+
+    private static int slotOf(HttpMethod method) {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (METHODS[i].equals(method)) {
+                return i;
+            }
+        }
+        return OTHER_METHOD;
+    }
+
+    private static final class Node {
+
+        final Map<String, Node> children = new HashMap<>();
+        final int[] prefix = newSlots();
+        final int[] exact = newSlots();
+
+        private static int[] newSlots() {
+            int[] slots = new int[OTHER_METHOD + 1];
+            Arrays.fill(slots, NO_RULE);
+            return slots;
+        }
+    }
+
+    /**
+     * 依宣告順序加入規則
+     */
+    public static final class Builder {
+
+        private final List<Rule> rules = new ArrayList<>();
+
+        public Builder permitAll(String... patterns) {
+            return add(null, Access.PERMIT_ALL, patterns);
+        }
+
+        public Builder permitAll(HttpMethod method, String... patterns) {
+            return add(method, Access.PERMIT_ALL, patterns);
+        }
+
+        public Builder authenticated(String... patterns) {
+            return add(null, Access.AUTHENTICATED, patterns);
+        }
+
+        public Builder authenticated(HttpMethod method, String... patterns) {
+            return add(method, Access.AUTHENTICATED, patterns);
+        }
+
+        /**
+         * @param defaultAccess 沒有規則符合時（{@code anyExchange()}）的存取規則
+         */
+        public RouteAccessPolicy build(Access defaultAccess) {
+            return new RouteAccessPolicy(rules, defaultAccess);
+        }
+
+        private Builder add(HttpMethod method, Access access, String... patterns) {
+            for (String pattern : patterns) {
+                rules.add(new Rule(method, pattern, access, PathPatternParser.defaultInstance.parse(pattern)));
+            }
+            return this;
+        }
+    }
+}
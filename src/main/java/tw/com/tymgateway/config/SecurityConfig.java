@@ -1,5 +1,6 @@
 package tw.com.tymgateway.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,7 +12,9 @@ import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import tw.com.ty.common.security.config.BaseSecurityConfig;
+import tw.com.tymgateway.service.JwksManager;
 
 /**
  * Gateway Security 配置
@@ -44,11 +47,14 @@ import tw.com.ty.common.security.config.BaseSecurityConfig;
 @Import(BaseSecurityConfig.class)
 public class SecurityConfig {
 
-    @Value("${keycloak.auth-server-url}")
-    private String keycloakAuthServerUrl;
+    @Autowired
+    private JwksManager jwksManager;
 
-    @Value("${keycloak.realm}")
-    private String keycloakRealm;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${gateway.jwt-cache.max-entries:10000}")
+    private long jwtCacheMaxEntries;
 
     /**
      * 配置 Security Web Filter Chain
@@ -72,71 +78,9 @@ public class SecurityConfig {
                 // CSRF 配置
                 .csrf(csrf -> csrf.disable())
 
-                // 授权规则：路由级别（粗粒度）
+                // 授权规则：路由级别（粗粒度），规则表见 routeAccessPolicy()
                 .authorizeExchange(exchanges -> exchanges
-                        // ========================================
-                        // CORS 预检请求：OPTIONS 方法完全放行
-                        // CORS 預檢請求：OPTIONS 方法完全放行
-                        // ========================================
-                        .pathMatchers(HttpMethod.OPTIONS, "/**").permitAll()
-
-                        // ========================================
-                        // 公共路径：无需 Token
-                        // ========================================
-                        // 健康檢查和监控
-                        .pathMatchers("/tymg/health/**").permitAll()
-                        .pathMatchers("/tymg/actuator/**").permitAll()
-                        .pathMatchers("/health/**").permitAll() // 內部探針對應路徑
-                        .pathMatchers("/actuator/**").permitAll() // 內部探針對應路徑
-
-                        // Swagger UI 和 API 文档
-                        .pathMatchers("/tymg/swagger-ui/**").permitAll()
-                        .pathMatchers("/tymg/v3/api-docs/**").permitAll()
-                        .pathMatchers("/tymg/webjars/**").permitAll()
-                        .pathMatchers("/tymg/api-docs/**").permitAll()
-                        // SpringDoc 默认路径（不带 /tymg 前缀）
-                        .pathMatchers("/swagger-ui/**").permitAll()
-                        .pathMatchers("/swagger-ui.html").permitAll()
-                        .pathMatchers("/swagger-ui/index.html").permitAll()
-                        .pathMatchers("/v3/api-docs/**").permitAll()
-                        .pathMatchers("/webjars/**").permitAll()
-
-                        // Keycloak OAuth endpoints
-                        .pathMatchers("/tymg/keycloak/**").permitAll()
-
-                        // Auth endpoints - Forward to Backend
-                        .pathMatchers("/tymg/auth/**").permitAll()
-
-                        // ========================================
-                        // 业务路径：GET 请求放行，其他方法需要有效 Token
-                        // ========================================
-                        // People Module - 所有操作放行（由 AsyncPeopleProxyController 处理，保持 gateway -> backend
-                        // -> consumer 流程）
-                        .pathMatchers("/tymg/people/**").permitAll()
-
-                        // Weapon Module - 修改端點公開以利於同步腳本
-                        .pathMatchers(HttpMethod.GET, "/tymg/weapons/**").permitAll()
-                        .pathMatchers(HttpMethod.POST, "/tymg/weapons/**").permitAll()
-                        .pathMatchers(HttpMethod.PUT, "/tymg/weapons/**").permitAll()
-                        .pathMatchers(HttpMethod.DELETE, "/tymg/weapons/**").permitAll()
-
-                        // Gallery Module - 修改端點公開以利於同步腳本
-                        .pathMatchers(HttpMethod.GET, "/tymg/gallery/**").permitAll()
-                        .pathMatchers(HttpMethod.POST, "/tymg/gallery/**").permitAll()
-                        .pathMatchers(HttpMethod.PUT, "/tymg/gallery/**").permitAll()
-                        .pathMatchers(HttpMethod.DELETE, "/tymg/gallery/**").permitAll()
-
-                        // 其他 Async API - 需要 Token（這些通常是异步操作）
-                        .pathMatchers("/tymg/api/**").authenticated()
-
-                        // CKEditor Module - 允許公開訪問 (Token 在 Query Param 中，Gateway 默認 Resolver
-                        // 無法讀取，故先放行)
-                        .pathMatchers("/tymg/ckeditor/**").permitAll()
-
-                        // ========================================
-                        // 默认规则：需要有效 Token（JWT 验证已启用）
-                        // ========================================
-                        .anyExchange().authenticated())
+                        .anyExchange().access(routeAccessPolicy()))
 
                 // OAuth2 Resource Server：JWT Token 验证
                 // Gateway 负责统一认证入口（粗粒度）
@@ -147,13 +91,90 @@ public class SecurityConfig {
                 .build();
     }
 
+    /**
+     * 路由级别的授权规则表
+     *
+     * <p>
+     * 按声明顺序优先匹配（与 pathMatchers 链相同），启动时编译为按 HTTP 方法索引的前缀树，
+     * 每个请求只需查找一次；编译结果会与逐条匹配做一致性校验，见 {@link RouteAccessPolicy}
+     * </p>
+     */
+    @Bean
+    public RouteAccessPolicy routeAccessPolicy() {
+        return RouteAccessPolicy.builder()
+                // ========================================
+                // CORS 预检请求：OPTIONS 方法完全放行
+                // CORS 預檢請求：OPTIONS 方法完全放行
+                // ========================================
+                .permitAll(HttpMethod.OPTIONS, "/**")
+
+                // ========================================
+                // 公共路径：无需 Token
+                // ========================================
+                // 健康檢查和监控
+                .permitAll("/tymg/health/**")
+                .permitAll("/tymg/actuator/**")
+                .permitAll("/health/**") // 內部探針對應路徑
+                .permitAll("/actuator/**") // 內部探針對應路徑
+
+                // Swagger UI 和 API 文档
+                .permitAll("/tymg/swagger-ui/**")
+                .permitAll("/tymg/v3/api-docs/**")
+                .permitAll("/tymg/webjars/**")
+                .permitAll("/tymg/api-docs/**")
+                // SpringDoc 默认路径（不带 /tymg 前缀）
+                .permitAll("/swagger-ui/**")
+                .permitAll("/swagger-ui.html")
+                .permitAll("/swagger-ui/index.html")
+                .permitAll("/v3/api-docs/**")
+                .permitAll("/webjars/**")
+
+                // Keycloak OAuth endpoints
+                .permitAll("/tymg/keycloak/**")
+
+                // Auth endpoints - Forward to Backend
+                .permitAll("/tymg/auth/**")
+
+                // ========================================
+                // 业务路径：GET 请求放行，其他方法需要有效 Token
+                // ========================================
+                // People Module - 所有操作放行（由 AsyncPeopleProxyController 处理，保持 gateway -> backend
+                // -> consumer 流程）
+                .permitAll("/tymg/people/**")
+
+                // Weapon Module - 修改端點公開以利於同步腳本
+                .permitAll(HttpMethod.GET, "/tymg/weapons/**")
+                .permitAll(HttpMethod.POST, "/tymg/weapons/**")
+                .permitAll(HttpMethod.PUT, "/tymg/weapons/**")
+                .permitAll(HttpMethod.DELETE, "/tymg/weapons/**")
+
+                // Gallery Module - 修改端點公開以利於同步腳本
+                .permitAll(HttpMethod.GET, "/tymg/gallery/**")
+                .permitAll(HttpMethod.POST, "/tymg/gallery/**")
+                .permitAll(HttpMethod.PUT, "/tymg/gallery/**")
+                .permitAll(HttpMethod.DELETE, "/tymg/gallery/**")
+
+                // 其他 Async API - 需要 Token（這些通常是异步操作）
+                .authenticated("/tymg/api/**")
+
+                // CKEditor Module - 允許公開訪問 (Token 在 Query Param 中，Gateway 默認 Resolver
+                // 無法讀取，故先放行)
+                .permitAll("/tymg/ckeditor/**")
+
+                // ========================================
+                // 默认规则：需要有效 Token（JWT 验证已启用）
+                // ========================================
+                .build(RouteAccessPolicy.Access.AUTHENTICATED);
+    }
+
     /**
      * Reactive JWT Decoder 配置
-     * 从 Keycloak 获取公钥验证 JWT Token
+     * 从 Keycloak 获取公钥验证 JWT Token（公钥由 {@link JwksManager} 保存，启动预热时预先取得）
+     * 验证通过的结果由 {@link CachingReactiveJwtDecoder} 缓存到 exp，重复的 Token 不再验证签章
      */
     @Bean
     public ReactiveJwtDecoder reactiveJwtDecoder() {
-        String jwkSetUri = keycloakAuthServerUrl + "/realms/" + keycloakRealm + "/protocol/openid-connect/certs";
-        return NimbusReactiveJwtDecoder.withJwkSetUri(jwkSetUri).build();
+        ReactiveJwtDecoder nimbus = NimbusReactiveJwtDecoder.withJwkSource(jwksManager::select).build();
+        return new CachingReactiveJwtDecoder(nimbus, jwksManager, meterRegistry, jwtCacheMaxEntries);
     }
 }
@@ -44,8 +44,14 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     public AsyncPeopleProxyController(
             WebClient backendWebClient,
             AsyncResultRegistry asyncResultRegistry,
+            AsyncProxySupport support,
             @Value("${gateway.async.timeout:30}") long waitTimeoutSeconds) {
-        super(backendWebClient, asyncResultRegistry, waitTimeoutSeconds);
+        super(backendWebClient, asyncResultRegistry, support, waitTimeoutSeconds);
+    }
+
+    @Override
+    protected String backendModule() {
+        return "people";
     }
 
     /**
@@ -57,8 +63,8 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     @GetMapping(value = "/names", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<ResponseEntity<Object>> getAllPeopleNames(
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: /people/names");
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: /people/names");
+        return proxyAsyncBackendRead("names",
                 backendWebClient.get().uri("/people/names"),
                 authorization);
     }
@@ -74,8 +80,8 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> insertPerson(
             @RequestBody People person,
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: /people/insert");
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: /people/insert");
+        return proxyAsyncBackendWrite(
                 backendWebClient.post().uri("/people/insert").bodyValue(person),
                 authorization);
     }
@@ -91,8 +97,8 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> updatePerson(
             @RequestBody People person,
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: /people/update");
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: /people/update");
+        return proxyAsyncBackendWrite(
                 backendWebClient.post().uri("/people/update").bodyValue(person),
                 authorization);
     }
@@ -108,14 +114,14 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> insertMultiplePeople(
             @RequestBody List<People> peopleList,
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: /people/insert-multiple, 接收到 {} 個角色", peopleList.size());
+        logger.debug("🔁 Gateway 同步代理請求: /people/insert-multiple, 接收到 {} 個角色", peopleList.size());
         if (!peopleList.isEmpty()) {
             People first = peopleList.get(0);
-            logger.info("🔍 第一個角色數據: name={}, codeName={}, dob={}, race={}, gender={}, job={}, email={}, age={}",
+            logger.debug("🔍 第一個角色數據: name={}, codeName={}, dob={}, race={}, gender={}, job={}, email={}, age={}",
                     first.getName(), first.getCodeName(), first.getDob(), first.getRace(),
                     first.getGender(), first.getJob(), first.getEmail(), first.getAge());
         }
-        return proxyAsyncBackendCall(
+        return proxyAsyncBackendWrite(
                 backendWebClient.post().uri("/people/insert-multiple").bodyValue(peopleList),
                 authorization);
     }
@@ -129,8 +135,8 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     @PostMapping(value = "/get-all", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<ResponseEntity<Object>> getAllPeople(
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: /people/get-all");
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: /people/get-all");
+        return proxyAsyncBackendRead("get-all",
                 backendWebClient.post().uri("/people/get-all"),
                 authorization);
     }
@@ -146,7 +152,7 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> getPeopleByName(
             @RequestBody PeopleNameRequestDTO request,
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: /people/get-by-name");
+        logger.debug("🔁 Gateway 同步代理請求: /people/get-by-name");
         return proxyAsyncBackendCall(
                 backendWebClient.post().uri("/people/get-by-name").bodyValue(request),
                 authorization);
@@ -161,8 +167,8 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     @PostMapping(value = "/delete-all", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<ResponseEntity<Object>> deleteAllPeople(
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: /people/delete-all");
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: /people/delete-all");
+        return proxyAsyncBackendWrite(
                 backendWebClient.post().uri("/people/delete-all"),
                 authorization);
     }
@@ -178,7 +184,7 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> batchDamageWithWeapon(
             @RequestBody Object request, // 使用 Object 以保持靈活性，直接轉發 payload
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: /people/batchDamageWithWeapon");
+        logger.debug("🔁 Gateway 同步代理請求: /people/batchDamageWithWeapon");
         return proxyAsyncBackendCall(
                 backendWebClient.post().uri("/people/batchDamageWithWeapon").bodyValue(request),
                 authorization);
@@ -195,7 +201,7 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> calculateDamage(
             @RequestParam String name,
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: /people/damage?name={}", name);
+        logger.debug("🔁 Gateway 同步代理請求: /people/damage?name={}", name);
         return proxyAsyncBackendCall(
                 backendWebClient.get().uri(
                         uriBuilder -> uriBuilder.path("/people/damageWithWeapon").queryParam("name", name).build()),
@@ -223,7 +229,7 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
         // 構建後端完整路徑：/people/damageWithWeapon（WebClient baseUrl 已包含 /tymb）
         String backendPath = "/people/damageWithWeapon";
         String fullBackendUrl = backendPath + "?name=" + name;
-        logger.info("🔁 Gateway → Backend 同步代理請求: {} (完整路徑: {})", fullBackendUrl, fullBackendUrl);
+        logger.debug("🔁 Gateway → Backend 同步代理請求: {} (完整路徑: {})", fullBackendUrl, fullBackendUrl);
 
         return backendWebClient
                 .get()
@@ -238,7 +244,7 @@ public class AsyncPeopleProxyController extends BaseAsyncProxyController {
                 .bodyToMono(new ParameterizedBackendResponse())
                 .map(response -> {
                     if (response.isSuccess() && response.getData() != null) {
-                        logger.info("✅ Gateway → Backend 成功: name={}, damage={}", name, response.getData());
+                        logger.debug("✅ Gateway → Backend 成功: name={}, damage={}", name, response.getData());
                         // 直接返回數據部分，前端期望的是數字值
                         return ResponseEntity.ok(response.getData());
                     } else {
@@ -0,0 +1,39 @@
+package tw.com.tymgateway.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import tw.com.tymgateway.service.AdaptiveConcurrencyLimiter;
+import tw.com.tymgateway.service.AsyncBackpressureMonitor;
+import tw.com.tymgateway.service.ResponseCache;
+import tw.com.tymgateway.service.StaleResponseStore;
+
+/**
+ * 異步代理控制器共用的依賴（背壓、熔斷、隔艙、併發上限與快取）
+ *
+ * <p>以建構子注入 {@link BaseAsyncProxyController}，子類只需轉交這一個參數。</p>
+ *
+ * @param backpressureMonitor    異步背壓監控
+ * @param circuitBreakerRegistry 模組熔斷器
+ * @param bulkheadRegistry       模組隔艙
+ * @param concurrencyLimiter     後端自適應併發限制
+ * @param staleResponseStore     降級時使用的暫存讀取結果
+ * @param responseCache          響應快取（本地 + Redis）
+ * @param objectMapper           異步讀取結果序列化
+ * @param asyncCacheTtlSeconds   異步讀取結果的快取時間，0 表示不快取
+ */
+@Component
+public record AsyncProxySupport(
+        AsyncBackpressureMonitor backpressureMonitor,
+        CircuitBreakerRegistry circuitBreakerRegistry,
+        BulkheadRegistry bulkheadRegistry,
+        AdaptiveConcurrencyLimiter concurrencyLimiter,
+        StaleResponseStore staleResponseStore,
+        ResponseCache responseCache,
+        ObjectMapper objectMapper,
+        @Value("${gateway.response-cache.async-ttl-seconds:10}") long asyncCacheTtlSeconds) {
+}
@@ -36,8 +36,14 @@ public class AsyncWeaponProxyController extends BaseAsyncProxyController {
     public AsyncWeaponProxyController(
             WebClient backendWebClient,
             AsyncResultRegistry asyncResultRegistry,
+            AsyncProxySupport support,
             @Value("${gateway.async.timeout:30}") long waitTimeoutSeconds) {
-        super(backendWebClient, asyncResultRegistry, waitTimeoutSeconds);
+        super(backendWebClient, asyncResultRegistry, support, waitTimeoutSeconds);
+    }
+
+    @Override
+    protected String backendModule() {
+        return "weapons";
     }
 
     /**
@@ -49,8 +55,8 @@ public class AsyncWeaponProxyController extends BaseAsyncProxyController {
     @GetMapping(value = "", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<ResponseEntity<Object>> getAllWeapons(
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: GET /weapons");
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: GET /weapons");
+        return proxyAsyncBackendRead("list",
                 backendWebClient.get().uri("/weapons"),
                 authorization);
     }
@@ -66,8 +72,8 @@ public class AsyncWeaponProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> getWeaponById(
             @PathVariable String weaponId,
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: GET /weapons/{}", weaponId);
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: GET /weapons/{}", weaponId);
+        return proxyAsyncBackendRead("id:" + weaponId,
                 backendWebClient.get().uri("/weapons/{weaponId}", weaponId),
                 authorization);
     }
@@ -83,8 +89,8 @@ public class AsyncWeaponProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> saveWeapon(
             @RequestBody Object weapon,
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: POST /weapons");
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: POST /weapons");
+        return proxyAsyncBackendWrite(
                 backendWebClient.post().uri("/weapons").bodyValue(weapon),
                 authorization);
     }
@@ -96,8 +102,8 @@ public class AsyncWeaponProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> insertMultipleWeapons(
             @RequestBody Object weapons,
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("Gateway proxy request: POST /weapons/insert-multiple");
-        return proxyAsyncBackendCall(
+        logger.debug("Gateway proxy request: POST /weapons/insert-multiple");
+        return proxyAsyncBackendWrite(
                 backendWebClient.post().uri("/weapons/insert-multiple").bodyValue(weapons),
                 authorization);
     }
@@ -113,8 +119,8 @@ public class AsyncWeaponProxyController extends BaseAsyncProxyController {
     public Mono<ResponseEntity<Object>> deleteWeapon(
             @PathVariable String weaponId,
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: DELETE /weapons/{}", weaponId);
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: DELETE /weapons/{}", weaponId);
+        return proxyAsyncBackendWrite(
                 backendWebClient.delete().uri("/weapons/{weaponId}", weaponId),
                 authorization);
     }
@@ -128,8 +134,8 @@ public class AsyncWeaponProxyController extends BaseAsyncProxyController {
     @DeleteMapping(value = "/delete-all", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<ResponseEntity<Object>> deleteAllWeapons(
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
-        logger.info("🔁 Gateway 同步代理請求: DELETE /weapons/delete-all");
-        return proxyAsyncBackendCall(
+        logger.debug("🔁 Gateway 同步代理請求: DELETE /weapons/delete-all");
+        return proxyAsyncBackendWrite(
                 backendWebClient.delete().uri("/weapons/delete-all"),
                 authorization);
     }
@@ -1,20 +1,37 @@
 package tw.com.tymgateway.controller;
 
 import java.time.Duration;
+import java.time.Instant;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
 import reactor.core.publisher.Mono;
 import tw.com.ty.common.response.BackendApiResponse;
 import tw.com.ty.common.response.ErrorCode;
+import tw.com.ty.common.response.GatewayResponse;
 import tw.com.tymgateway.dto.AsyncResultMessage;
+import tw.com.tymgateway.filter.RequestDeadlineWebFilter;
+import tw.com.tymgateway.service.AdaptiveConcurrencyLimiter;
+import tw.com.tymgateway.service.AsyncBackpressureMonitor;
 import tw.com.tymgateway.service.AsyncResultRegistry;
+import tw.com.tymgateway.service.ResponseCache;
+import tw.com.tymgateway.service.StaleResponseStore;
 
 /**
  * 異步代理控制器基類
@@ -41,16 +58,48 @@ public abstract class BaseAsyncProxyController {
     protected final AsyncResultRegistry asyncResultRegistry;
     // 網關等待超時時間
     protected final Duration gatewayWaitTimeout;
+    // 異步背壓監控
+    protected final AsyncBackpressureMonitor backpressureMonitor;
+    // 模組熔斷器
+    protected final CircuitBreakerRegistry circuitBreakerRegistry;
+    // 模組隔艙
+    protected final BulkheadRegistry bulkheadRegistry;
+    // 後端自適應併發限制
+    protected final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    // 降級時使用的暫存讀取結果
+    protected final StaleResponseStore staleResponseStore;
+    // 響應快取（本地 + Redis）：YAML 路由的 GET 響應與異步讀取結果
+    protected final ResponseCache responseCache;
+    // 異步讀取結果序列化後放入響應快取
+    protected final ObjectMapper objectMapper;
+    // 異步讀取結果的快取時間，0 表示不快取
+    protected final long asyncCacheTtlSeconds;
 
     protected BaseAsyncProxyController(
             WebClient backendWebClient,
             AsyncResultRegistry asyncResultRegistry,
+            AsyncProxySupport support,
             @Value("${gateway.async.timeout:30}") long waitTimeoutSeconds) {
         this.backendWebClient = backendWebClient;
         this.asyncResultRegistry = asyncResultRegistry;
         this.gatewayWaitTimeout = Duration.ofSeconds(waitTimeoutSeconds);
+        this.backpressureMonitor = support.backpressureMonitor();
+        this.circuitBreakerRegistry = support.circuitBreakerRegistry();
+        this.bulkheadRegistry = support.bulkheadRegistry();
+        this.concurrencyLimiter = support.concurrencyLimiter();
+        this.staleResponseStore = support.staleResponseStore();
+        this.responseCache = support.responseCache();
+        this.objectMapper = support.objectMapper();
+        this.asyncCacheTtlSeconds = support.asyncCacheTtlSeconds();
     }
 
+    /**
+     * 後端模組名稱，對應 resilience4j 的熔斷器與隔艙實例
+     *
+     * @return 模組名稱（例如 people、weapons）
+     */
+    protected abstract String backendModule();
+
     /**
      * 代理異步後端調用，並等待結果
      * 
@@ -70,39 +119,222 @@ public abstract class BaseAsyncProxyController {
     protected Mono<ResponseEntity<Object>> proxyAsyncBackendCall(
             WebClient.RequestHeadersSpec<?> requestSpec,
             String authorization) {
-        return requestSpec
-                // 設置 Authorization header
-                .headers(headers -> {
-                    if (authorization != null && !authorization.isBlank()) {
-                        headers.set(HttpHeaders.AUTHORIZATION, authorization);
-                    }
-                })
-                // 發送請求，並獲得 response
-                .retrieve()
-                // 將 response 轉換為 BackendApiResponse
-                .bodyToMono(new ParameterizedBackendResponse())
-                .flatMap(response -> {
-                    // 如果 response 不是成功，則返回錯誤響應
-                    if (!response.isSuccess()
-                            || response.getRequestId() == null
-                            || response.getCode() != HttpStatus.ACCEPTED.value()) {
-                        logger.error("後端未返回有效的 requestId 或狀態碼不是 202, response={}", response);
-                        return Mono.just(ResponseEntity.status(response.getCode())
-                                .body((Object) response));
-                    }
+        return Mono.deferContextual(context -> {
+            // 截止時間：Gateway 自身等待上限，若客戶端帶入更早的截止時間則以客戶端為準
+            Instant deadline = Instant.now().plus(gatewayWaitTimeout);
+            Instant clientDeadline = RequestDeadlineWebFilter.clientDeadline(context).orElse(null);
+            if (clientDeadline != null && clientDeadline.isBefore(deadline)) {
+                deadline = clientDeadline;
+            }
+            if (!deadline.isAfter(Instant.now())) {
+                logger.warn("客戶端截止時間已過，不再送出後端請求: deadline={}", deadline);
+                return Mono.just(deadlineExceededResponse("請求截止時間已過"));
+            }
+            Instant requestDeadline = deadline;
+
+            // 後端提交受自適應併發上限保護，RTT 用於調整上限
+            return concurrencyLimiter.execute(backendModule(), () -> requestSpec
+                    // 設置 Authorization header
+                    .headers(headers -> {
+                        if (authorization != null && !authorization.isBlank()) {
+                            headers.set(HttpHeaders.AUTHORIZATION, authorization);
+                        }
+                        // 傳遞絕對截止時間，讓 Backend / Consumer 可以放棄已無人等待的工作
+                        headers.set(RequestDeadlineWebFilter.DEADLINE_HEADER,
+                                String.valueOf(requestDeadline.toEpochMilli()));
+                    })
+                    // 發送請求，並獲得 response
+                    .retrieve()
+                    // 將 response 轉換為 BackendApiResponse
+                    .bodyToMono(new ParameterizedBackendResponse()))
+                    // 隔艙只限制後端提交；異步等待可長達 gateway.async.timeout，不佔用隔艙名額
+                    .transformDeferred(BulkheadOperator.of(bulkheadRegistry.bulkhead(backendModule())))
+                    .flatMap(response -> {
+                        // 如果 response 不是成功，則返回錯誤響應
+                        if (!response.isSuccess()
+                                || response.getRequestId() == null
+                                || response.getCode() != HttpStatus.ACCEPTED.value()) {
+                            logger.error("後端未返回有效的 requestId 或狀態碼不是 202, response={}", response);
+                            return Mono.just(ResponseEntity.status(response.getCode())
+                                    .body((Object) response));
+                        }
 
-                    String requestId = response.getRequestId();
-                    logger.info("✅ 後端接受請求，requestId={}", requestId);
-
-                    return asyncResultRegistry.awaitResult(requestId, gatewayWaitTimeout)
-                            .map(this::toSuccessResponse)
-                            .onErrorResume(throwable -> {
-                                logger.error("等待異步結果超時或失敗: requestId={}, error={}", requestId, throwable.getMessage());
-                                return Mono.just(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
-                                        .body(BackendApiResponse.error(ErrorCode.INTERNAL_SERVER_ERROR,
-                                                "等待異步結果超時或失敗: " + throwable.getMessage())));
-                            });
+                        String requestId = response.getRequestId();
+                        logger.debug("✅ 後端接受請求，requestId={}", requestId);
+
+                        Duration remaining = Duration.between(Instant.now(), requestDeadline);
+                        if (remaining.isNegative() || remaining.isZero()) {
+                            return Mono.just(deadlineExceededResponse("請求截止時間已過"));
+                        }
+
+                        return asyncResultRegistry.awaitResult(requestId, remaining, requestDeadline)
+                                .map(this::toSuccessResponse)
+                                .onErrorMap(throwable -> new AsyncWaitFailedException(requestId, throwable));
+                    })
+                    // 熔斷器包住後端提交與異步等待（等待逾時也計入後端失敗）；隔艙已滿不計入熔斷失敗
+                    .transformDeferred(CircuitBreakerOperator.of(circuitBreakerRegistry.circuitBreaker(backendModule())))
+                    .onErrorResume(CallNotPermittedException.class, e -> {
+                        logger.warn("⚡ 模組 {} 熔斷開啟，快速失敗", backendModule());
+                        return Mono.just(fallbackResponse());
+                    })
+                    .onErrorResume(BulkheadFullException.class, e -> {
+                        logger.warn("⚡ 模組 {} 隔艙已滿，快速失敗", backendModule());
+                        return Mono.just(fallbackResponse());
+                    })
+                    .onErrorResume(AdaptiveConcurrencyLimiter.LimitExceededException.class, e -> {
+                        logger.warn("⚡ 模組 {} 超過自適應併發上限，快速失敗", backendModule());
+                        return Mono.just(fallbackResponse());
+                    })
+                    .onErrorResume(AsyncWaitFailedException.class, e -> {
+                        logger.error("等待異步結果超時或失敗: requestId={}, error={}",
+                                e.requestId, e.getCause().getMessage());
+                        return Mono.just(deadlineExceededResponse(
+                                "等待異步結果超時或失敗: " + e.getCause().getMessage()));
+                    });
+        });
+    }
+
+    /**
+     * 代理冪等讀取請求（stale-while-revalidate）
+     *
+     * <p>
+     * 成功的結果會記錄為該 key 的最後一次成功響應；熔斷開啟（503）或截止時間已過（504）時，
+     * 若有暫存資料則直接回應暫存資料並附上 Warning / Age header，同時在背景重新驗證。
+     * 響應快取（{@code gateway.response-cache.async-ttl-seconds} 內，本地或 Redis）命中時不送往後端。
+     * 暫存與快取的 key 都依 Authorization 區分（{@link StaleResponseStore#scopedKey}）。
+     * </p>
+     *
+     * @param cacheKey      暫存 key（同一份資料需使用相同 key）
+     * @param requestSpec   WebClient request spec
+     * @param authorization Authorization header
+     * @return 最終響應
+     */
+    protected Mono<ResponseEntity<Object>> proxyAsyncBackendRead(
+            String cacheKey,
+            WebClient.RequestHeadersSpec<?> requestSpec,
+            String authorization) {
+        String key = "async:" + backendModule() + ":" + cacheKey;
+        // 暫存與響應快取都以 Authorization 區分，不會把某個使用者的讀取結果回給其他人
+        String scopedKey = StaleResponseStore.scopedKey(key, authorization);
+        Mono<ResponseEntity<Object>> live = proxyAsyncBackendCall(requestSpec, authorization)
+                .doOnNext(response -> {
+                    if (response.getStatusCode().is2xxSuccessful()) {
+                        staleResponseStore.put(scopedKey, response.getBody(), response.getHeaders(), null,
+                                HttpHeaders.EMPTY);
+                        cacheReadResult(scopedKey, response);
+                    }
                 });
+
+        Mono<ResponseEntity<Object>> result = live.map(response -> {
+            if (!isDegraded(response)) {
+                return response;
+            }
+            return staleResponseStore.get(scopedKey, HttpHeaders.EMPTY)
+                    .map(entry -> {
+                        logger.warn("後端降級，改以暫存資料回應: key={}, age={}s", key, entry.ageSeconds());
+                        staleResponseStore.revalidate(scopedKey, live);
+                        staleResponseStore.recordServed();
+                        return ResponseEntity.ok()
+                                .headers(staleResponseStore.staleHeaders(entry))
+                                .body(entry.body());
+                    })
+                    .orElse(response);
+        });
+        if (asyncCacheTtlSeconds <= 0) {
+            return result;
+        }
+        return responseCache.lookup(scopedKey)
+                .map(cached -> ResponseEntity.ok()
+                        .headers(headers -> {
+                            headers.addAll(cached.headers());
+                            headers.set(HttpHeaders.AGE, String.valueOf(cached.ageSeconds()));
+                            headers.set("X-Cache", "HIT");
+                        })
+                        .body((Object) cached.body()))
+                .switchIfEmpty(result);
+    }
+
+    /**
+     * 把成功的讀取結果序列化後放入響應快取（本地 + Redis），讓其他副本也能直接命中
+     */
+    private void cacheReadResult(String key, ResponseEntity<Object> response) {
+        if (asyncCacheTtlSeconds <= 0 || response.getBody() == null) {
+            return;
+        }
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(response.getBody());
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            responseCache.store(key, headers, body, Duration.ofSeconds(asyncCacheTtlSeconds));
+        } catch (JsonProcessingException e) {
+            logger.debug("讀取結果無法序列化，不放入快取: key={}, error={}", key, e.getMessage());
+        }
+    }
+
+    private boolean isDegraded(ResponseEntity<Object> response) {
+        int status = response.getStatusCode().value();
+        return status == HttpStatus.SERVICE_UNAVAILABLE.value() || status == HttpStatus.GATEWAY_TIMEOUT.value();
+    }
+
+    /**
+     * 建立熔斷 / 隔艙 / 併發上限快速失敗的降級響應（與 {@link FallbackController} 一致）
+     *
+     * @return HTTP 503 響應
+     */
+    protected ResponseEntity<Object> fallbackResponse() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(FallbackController.fallbackBody());
+    }
+
+    /**
+     * 建立截止時間已過 / 等待超時的響應
+     *
+     * @param message 錯誤訊息
+     * @return HTTP 504 響應
+     */
+    protected ResponseEntity<Object> deadlineExceededResponse(String message) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                .body(BackendApiResponse.error(ErrorCode.INTERNAL_SERVER_ERROR, message));
+    }
+
+    /**
+     * 代理異步寫入請求，並依背壓等級決定是否送出
+     *
+     * <p>
+     * Consumer 落後過多時，寫入請求會先延後送出（DEFER）或直接以 503 拒絕（REJECT），
+     * 讓 Gateway 能逐步降級，而不是讓所有請求一起等到超時。讀取請求不受影響。
+     * 寫入成功後清除同模組的路由響應快取與異步讀取結果快取。
+     * </p>
+     *
+     * @param requestSpec   WebClient request spec
+     * @param authorization Authorization header
+     * @return 最終響應
+     */
+    protected Mono<ResponseEntity<Object>> proxyAsyncBackendWrite(
+            WebClient.RequestHeadersSpec<?> requestSpec,
+            String authorization) {
+        return Mono.defer(() -> {
+            AsyncBackpressureMonitor.Level level = backpressureMonitor.currentLevel();
+            if (level == AsyncBackpressureMonitor.Level.REJECT) {
+                backpressureMonitor.recordRejected();
+                logger.warn("⛔ Consumer 處理落後過多，拒絕新的寫入請求");
+                return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(backpressureMonitor.retryAfterSeconds()))
+                        .body((Object) GatewayResponse.serviceUnavailable("後端處理繁忙，請稍後再試")));
+            }
+            if (level == AsyncBackpressureMonitor.Level.DEFER) {
+                backpressureMonitor.recordDeferred();
+                logger.debug("Consumer 處理落後，延後送出寫入請求: delay={}", backpressureMonitor.deferDelay());
+                return Mono.delay(backpressureMonitor.deferDelay())
+                        .then(proxyAsyncBackendCall(requestSpec, authorization));
+            }
+            return proxyAsyncBackendCall(requestSpec, authorization);
+        }).doOnNext(response -> {
+            if (response.getStatusCode().is2xxSuccessful()) {
+                responseCache.invalidatePrefix("GET /tymg/" + backendModule());
+                responseCache.invalidatePrefix("async:" + backendModule() + ":");
+            }
+        });
     }
 
     /**
@@ -123,10 +355,23 @@ public abstract class BaseAsyncProxyController {
         }
 
         Object data = resultMessage.getData();
-        logger.info("📤 返回最終結果: requestId={}", resultMessage.getRequestId());
+        logger.debug("📤 返回最終結果: requestId={}", resultMessage.getRequestId());
         return ResponseEntity.ok(data);
     }
 
+    /**
+     * 等待異步結果失敗（超時或 Consumer 無回應），交由熔斷器計入失敗後再轉為 504
+     */
+    private static class AsyncWaitFailedException extends RuntimeException {
+
+        private final String requestId;
+
+        AsyncWaitFailedException(String requestId, Throwable cause) {
+            super(cause);
+            this.requestId = requestId;
+        }
+    }
+
     /**
      * 解析 BackendApiResponse 的 ParameterizedTypeReference
      */
@@ -1,20 +1,33 @@
 package tw.com.tymgateway.controller;
 
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
 import tw.com.ty.common.response.GatewayResponse;
+import tw.com.tymgateway.service.StaleResponseStore;
 
 /**
  * 熔斷降級控制器
- * 
+ *
  * <p>當後端服務不可用時，提供降級響應</p>
- * 
+ *
+ * <p>YAML 路由的 {@code CircuitBreaker} 過濾器以 {@code forward:/fallback/{module}} 轉到這裡；
+ * 異步代理在熔斷開啟時也使用相同的降級響應內容。</p>
+ *
  * @author TY Team
  * @version 1.0
  */
@@ -22,6 +35,14 @@ import tw.com.ty.common.response.GatewayResponse;
 @RequestMapping("/fallback")
 public class FallbackController {
 
+    private static final Logger logger = LoggerFactory.getLogger(FallbackController.class);
+
+    private final StaleResponseStore staleResponseStore;
+
+    public FallbackController(StaleResponseStore staleResponseStore) {
+        this.staleResponseStore = staleResponseStore;
+    }
+
     /**
      * GET 請求降級處理
      *
@@ -42,6 +63,51 @@ public class FallbackController {
         return Mono.just(createFallbackResponse());
     }
 
+    /**
+     * 模組降級處理（所有 HTTP 方法）
+     *
+     * <p>GET 請求若有最後一次成功的暫存響應，改以暫存資料回應（附 Warning / Age header），
+     * 並在背景重新驗證。</p>
+     *
+     * @param module   後端模組名稱（people、weapons、gallery、deckofcards）
+     * @param exchange 當前請求，包含熔斷器記錄的失敗原因
+     * @return 暫存響應或降級響應
+     */
+    @RequestMapping("/{module}")
+    public Mono<ResponseEntity<?>> moduleFallback(
+            @PathVariable String module,
+            ServerWebExchange exchange) {
+        Throwable cause = exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR);
+        logger.warn("模組 {} 降級: {} {}, cause={}", module,
+                exchange.getRequest().getMethod(),
+                exchange.getRequest().getPath(),
+                cause != null ? cause.getClass().getSimpleName() : "unknown");
+
+        if (exchange.getRequest().getMethod() == HttpMethod.GET) {
+            String key = StaleResponseStore.routeKey(exchange);
+            HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+            Optional<StaleResponseStore.Entry> stale = staleResponseStore.get(key, requestHeaders);
+            if (stale.isPresent()) {
+                StaleResponseStore.Entry entry = stale.get();
+                staleResponseStore.revalidateRoute(key, entry, requestHeaders);
+                staleResponseStore.recordServed();
+                return Mono.just(ResponseEntity.ok()
+                        .headers(staleResponseStore.staleHeaders(entry))
+                        .body(entry.body()));
+            }
+        }
+        return Mono.just(createFallbackResponse());
+    }
+
+    /**
+     * 降級響應內容
+     *
+     * @return 503 響應主體
+     */
+    public static GatewayResponse<Void> fallbackBody() {
+        return GatewayResponse.serviceUnavailable("后端服务暂时不可用，请稍后再试");
+    }
+
     /**
      * 創建降級響應
      *
@@ -50,7 +116,6 @@ public class FallbackController {
     private ResponseEntity<GatewayResponse<Void>> createFallbackResponse() {
         return ResponseEntity
                 .status(HttpStatus.SERVICE_UNAVAILABLE)
-                .body(GatewayResponse.serviceUnavailable("后端服务暂时不可用，请稍后再试"));
+                .body(fallbackBody());
     }
 }
-
@@ -3,10 +3,12 @@ package tw.com.tymgateway.controller;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -16,6 +18,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.function.BodyInserters;
@@ -25,6 +28,10 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 import tw.com.ty.common.response.ErrorCode;
 import tw.com.ty.common.response.MessageKey;
+import tw.com.tymgateway.service.DebugEventSink;
+import tw.com.tymgateway.service.KeycloakLogoutQueue;
+import tw.com.tymgateway.service.TokenIntrospectionCache;
+import tw.com.tymgateway.service.TokenRefreshCoalescer;
 import jakarta.annotation.PostConstruct;
 
 /**
@@ -41,46 +48,41 @@ public class KeycloakController {
     private String frontendUrl;
 
     private static final Logger log = LoggerFactory.getLogger(KeycloakController.class);
-    private static final String[] DEBUG_LOG_PATHS = new String[] {
-            "f:\\002-workspace\\ty-multiverse\\.cursor\\debug.log", // workspace absolute (Windows)
-            ".cursor/debug.log" // relative fallback (e.g., different cwd/platform)
-    };
 
     private String safe(String value) {
         return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"");
     }
 
-    private void agentLog(String hypothesisId, String location, String message, String dataJson) {
-        // #region agent log
-        boolean written = false;
-        for (String path : DEBUG_LOG_PATHS) {
-            try {
-                java.io.File file = new java.io.File(path);
-                file.getParentFile().mkdirs();
-                try (java.io.FileWriter fw = new java.io.FileWriter(file, true)) {
-                    fw.write("{\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\""
-                            + hypothesisId + "\",\"location\":\"" + location + "\",\"message\":\"" + message
-                            + "\",\"data\":" + dataJson + ",\"timestamp\":" + System.currentTimeMillis() + "}\n");
-                }
-                written = true;
-                break;
-            } catch (Exception ignored) {
-                // try next path
-            }
-        }
-        if (!written) {
-            log.warn("agentLog failed to write debug entry for {} {}", hypothesisId, location);
-        }
-        // #endregion
+    /**
+     * 寫入除錯事件（非同步，停用時不組合字串）
+     */
+    private void agentLog(String hypothesisId, String location, String message, Supplier<String> dataJson) {
+        debugEventSink.record(hypothesisId, location, message, dataJson);
     }
 
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    private DebugEventSink debugEventSink;
+
+    @Autowired
+    @Qualifier("keycloakWebClient")
+    private WebClient keycloakWebClient;
 
     private WebClient getWebClient() {
-        return webClientBuilder.build();
+        return keycloakWebClient;
     }
 
+    @Autowired
+    private TokenIntrospectionCache tokenIntrospectionCache;
+
+    @Autowired
+    private TokenRefreshCoalescer tokenRefreshCoalescer;
+
+    @Autowired
+    private ReactiveJwtDecoder jwtDecoder;
+
+    @Autowired
+    private KeycloakLogoutQueue keycloakLogoutQueue;
+
     @Value("${keycloak.realm}")
     private String realm;
 
@@ -107,8 +109,8 @@ public class KeycloakController {
      * 處理從 Keycloak 認證後重導向回來的請求
      * 
      * 本方法使用授權碼向 Keycloak 取得存取憑證 (access token) 與更新憑證 (refresh token)，
-     * 並呼叫 userinfo 端點以獲取使用者資訊。成功取得資料後，會將使用者名稱、電子郵件、
-     * access token 以及 refresh token 附加至前端 URL 並進行重導向。
+     * 並以本地驗證的 id_token claims 取得使用者資訊（缺少時才呼叫 userinfo 端點）。
+     * 成功取得資料後，會將使用者名稱、電子郵件、access token 以及 refresh token 附加至前端 URL 並進行重導向。
      *
      * @param code Keycloak 返回的授權碼
      * @param exchange ServerWebExchange 用於獲取請求 URL 和進行重導向
@@ -122,16 +124,16 @@ public class KeycloakController {
         // Keycloak 要求 redirect_uri 必須與授權請求時完全一致（不包含查詢參數）
         java.net.URI requestUri = exchange.getRequest().getURI();
         String redirectUri = requestUri.getScheme() + "://" + requestUri.getAuthority() + requestUri.getPath();
-        log.info("後端使用的 redirectUri: {}", redirectUri);
+        log.debug("後端使用的 redirectUri: {}", redirectUri);
         
         // 組合 token 請求 URL：Keycloak Token Endpoint
         String tokenUrl = ssoUrl + "/realms/" + realm + "/protocol/openid-connect/token";
 
-        log.info("收到授權碼: {}", code);
-        log.info("Client ID: {}", clientId);
-        log.info("Client Secret 長度: {}", clientSecret != null ? clientSecret.length() : 0);
-        log.info("Token URL: {}", tokenUrl);
-        log.info("Redirect URI: {}", redirectUri);
+        log.debug("收到授權碼: {}", code);
+        log.debug("Client ID: {}", clientId);
+        log.debug("Client Secret 長度: {}", clientSecret != null ? clientSecret.length() : 0);
+        log.debug("Token URL: {}", tokenUrl);
+        log.debug("Redirect URI: {}", redirectUri);
 
         // 建立存放 token 請求參數的 MultiValueMap
         MultiValueMap<String, String> tokenParams = new LinkedMultiValueMap<>();
@@ -141,11 +143,11 @@ public class KeycloakController {
         tokenParams.add("grant_type", "authorization_code");
         tokenParams.add("redirect_uri", redirectUri);
 
-        log.info("Token 請求參數: client_id={}, grant_type=authorization_code, redirect_uri={}", 
+        log.debug("Token 請求參數: client_id={}, grant_type=authorization_code, redirect_uri={}", 
                 clientId, redirectUri);
 
         agentLog("H1", "KeycloakController.keycloakRedirect", "token_request_params",
-                "{\"realm\":\"" + safe(realm) + "\","
+                () -> "{\"realm\":\"" + safe(realm) + "\","
                         + "\"clientId\":\"" + safe(clientId) + "\","
                         + "\"secretLength\":" + (clientSecret == null ? 0 : clientSecret.length()) + ","
                         + "\"redirectUri\":\"" + safe(redirectUri) + "\","
@@ -163,7 +165,7 @@ public class KeycloakController {
                 .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(), response -> {
                     log.error("Keycloak token 請求失敗: HTTP {}", response.statusCode());
                     agentLog("H2", "KeycloakController.keycloakRedirect", "token_error_status",
-                            "{\"status\":\"" + response.statusCode() + "\"}");
+                            () -> "{\"status\":\"" + response.statusCode() + "\"}");
                     return response.bodyToMono(String.class)
                             .doOnNext(errorBody -> log.error("Keycloak 錯誤響應: {}", errorBody))
                             .then(Mono.error(new RuntimeException("Keycloak token 請求失敗: " + response.statusCode())));
@@ -182,30 +184,32 @@ public class KeycloakController {
                     String idToken = (String) tokenBody.get("id_token");
 
                     // #4：不可將 token 明文寫入日誌（會洩漏到日誌系統）
-                    log.info("Access Token: {}", accessToken != null ? "已取得(len=" + accessToken.length() + ")" : "null");
-                    log.info("Refresh Token: {}", refreshToken != null ? "已取得" : "null");
-                    log.info("ID Token: {}", idToken != null ? "存在" : "不存在");
+                    log.debug("Access Token: {}", accessToken != null ? "已取得(len=" + accessToken.length() + ")" : "null");
+                    log.debug("Refresh Token: {}", refreshToken != null ? "已取得" : "null");
+                    log.debug("ID Token: {}", idToken != null ? "存在" : "不存在");
 
                     // 若其中任一 token 為 null，表示取得失敗，則拋出異常
                     if (accessToken == null || refreshToken == null) {
                         return Mono.error(new RuntimeException("無法取得 access token"));
                     }
 
-                    // 呼叫 Keycloak userinfo endpoint 取得使用者資訊
+                    // 優先以本地驗證的 id_token / access token claims 取得使用者資訊，
+                    // 缺少使用者名稱時才呼叫 Keycloak userinfo endpoint
                     String userInfoUrl = ssoUrl + "/realms/" + realm + "/protocol/openid-connect/userinfo";
-                    
-                    return getWebClient()
-                            .get()
-                            .uri(userInfoUrl)
-                            .header("Authorization", "Bearer " + accessToken)
-                            .retrieve()
-                            .bodyToMono(new org.springframework.core.ParameterizedTypeReference<Map<String, Object>>() {})
+
+                    return localUserClaims(idToken, accessToken)
+                            .switchIfEmpty(Mono.defer(() -> getWebClient()
+                                    .get()
+                                    .uri(userInfoUrl)
+                                    .header("Authorization", "Bearer " + accessToken)
+                                    .retrieve()
+                                    .bodyToMono(new org.springframework.core.ParameterizedTypeReference<Map<String, Object>>() {})))
                             .flatMap(userInfo -> {
                                 if (userInfo == null) {
                                     return Mono.error(new RuntimeException("無法取得使用者資訊"));
                                 }
 
-                                log.info("使用者資訊: {}", userInfo);
+                                log.debug("使用者資訊: {}", userInfo);
 
                                 // 從使用者資訊中取得使用者名稱
                                 String preferredUsername = (String) userInfo.get("preferred_username");
@@ -236,11 +240,11 @@ public class KeycloakController {
                                     }
 
                                     // 添加詳細日誌（#4：不可印出 token 或含 token 的完整 URL）
-                                    log.info("=== 重定向診斷 ===");
-                                    log.info("前端URL: {}", frontendUrl);
-                                    log.info("用戶名: {}", preferredUsername);
-                                    log.info("Token長度: {}", accessToken.length());
-                                    log.info("重定向目標(不含機密): {}?username=...", frontendUrl);
+                                    log.debug("=== 重定向診斷 ===");
+                                    log.debug("前端URL: {}", frontendUrl);
+                                    log.debug("用戶名: {}", preferredUsername);
+                                    log.debug("Token長度: {}", accessToken.length());
+                                    log.debug("重定向目標(不含機密): {}?username=...", frontendUrl);
 
                                     // 執行 HTTP 重導向
                                     exchange.getResponse().setStatusCode(HttpStatus.FOUND);
@@ -253,7 +257,7 @@ public class KeycloakController {
                 })
                 .onErrorResume(e -> {
                     agentLog("H3", "KeycloakController.keycloakRedirect", "token_error_caught",
-                            "{\"exception\":\"" + safe(e.getClass().getSimpleName()) + "\","
+                            () -> "{\"exception\":\"" + safe(e.getClass().getSimpleName()) + "\","
                                     + "\"message\":\"" + safe(e.getMessage()) + "\"}");
                     // 若有任何錯誤，記錄詳細錯誤信息
                     if (e instanceof org.springframework.web.reactive.function.client.WebClientRequestException) {
@@ -273,13 +277,32 @@ public class KeycloakController {
                 });
     }
 
+    /**
+     * 以快取的 JWKS 在本地驗證 id_token（其次 access token），回傳含 preferred_username 的 claims
+     *
+     * @return 使用者 claims；token 驗證失敗或缺少使用者名稱時為 empty
+     */
+    private Mono<Map<String, Object>> localUserClaims(String idToken, String accessToken) {
+        return reactor.core.publisher.Flux.fromStream(java.util.stream.Stream.of(idToken, accessToken)
+                        .filter(java.util.Objects::nonNull))
+                .concatMap(token -> jwtDecoder.decode(token)
+                        .map(org.springframework.security.oauth2.jwt.Jwt::getClaims)
+                        .onErrorResume(e -> {
+                            log.debug("Token 本地驗證失敗，改用 userinfo: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .filter(claims -> claims.get("preferred_username") != null)
+                .next();
+    }
+
     /**
      * 使用提供的 refresh token 呼叫 Keycloak 的登出 API，撤銷更新憑證
      * 
-     * 此方法將 refresh token 與 client 資訊作為參數傳遞至 Keycloak 登出端點，
-     * 若成功則回傳登出成功訊息；若失敗則回傳錯誤訊息。
+     * 撤銷 refresh token 與清除伺服器端 session（有 id_token 時）交給 {@link KeycloakLogoutQueue}
+     * 在背景執行（並行、失敗重試），本方法立即回傳登出成功訊息，Keycloak 變慢時登出不會卡住。
      *
      * @param refreshToken 用於登出的更新憑證
+     * @param idToken (可選) 用於清除伺服器端 session 的 id token
      * @return Mono<ResponseEntity> 包含登出操作結果的訊息與狀態碼
      */
     @CrossOrigin
@@ -287,86 +310,22 @@ public class KeycloakController {
     public Mono<org.springframework.http.ResponseEntity<String>> logout(
             @RequestParam("refreshToken") String refreshToken,
             @RequestParam(value = "idToken", required = false) String idToken) {
-        log.info("收到登出請求，refreshToken 長度: {}, idToken: {}", 
+        log.debug("收到登出請求，refreshToken 長度: {}, idToken: {}", 
                 refreshToken != null ? refreshToken.length() : 0, 
                 idToken != null ? "存在" : "不存在");
-        
-        // Step 1: 撤銷 refresh token（使用 /logout 端點）
-        // 端點: POST /realms/{realm}/protocol/openid-connect/logout
-        // 參數: client_id, client_secret, refresh_token
-        String logoutUrl = ssoUrl + "/realms/" + realm + "/protocol/openid-connect/logout";
-        log.info("Step 1: 調用 Keycloak logout 端點撤銷 refresh token: {}", logoutUrl);
-
-        MultiValueMap<String, String> bodyParams = new LinkedMultiValueMap<>();
-        bodyParams.add("client_id", clientId);
-        bodyParams.add("client_secret", clientSecret);
-        bodyParams.add("refresh_token", refreshToken);
 
-        Mono<String> revokeTokenResult = getWebClient()
-                .post()
-                .uri(logoutUrl)
-                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
-                .body(BodyInserters.fromFormData(bodyParams))
-                .retrieve()
-                .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(), response -> {
-                    log.warn("Keycloak logout 端點返回錯誤: HTTP {} (token 可能已過期)", response.statusCode());
-                    return response.bodyToMono(String.class)
-                            .doOnNext(errorBody -> log.warn("Keycloak logout 錯誤響應: {}", errorBody))
-                            .flatMap(errorBody -> Mono.error(new RuntimeException("Keycloak logout failed: " + response.statusCode())));
-                })
-                .bodyToMono(String.class)
-                .doOnSuccess(result -> {
-                    log.info("✅ Step 1 完成: Refresh token 已撤銷，響應: {}", result);
-                })
-                .doOnError(error -> {
-                    log.warn("⚠️ Step 1 警告: Keycloak logout 端點調用失敗 (token 可能已過期)", error);
-                })
-                .onErrorReturn("Token revocation completed (may have been already invalid)");
-
-        // Step 2: 如果有 id_token，調用 end_session_endpoint 清除服務器端 session
-        if (idToken != null && !idToken.isEmpty()) {
-            // 端點: GET /realms/{realm}/protocol/openid-connect/logout (end_session_endpoint)
-            // 參數: id_token_hint, post_logout_redirect_uri (可選)
-            String endSessionUrl = ssoUrl + "/realms/" + realm + "/protocol/openid-connect/logout" +
-                    "?id_token_hint=" + java.net.URLEncoder.encode(idToken, StandardCharsets.UTF_8) +
-                    "&post_logout_redirect_uri=" + java.net.URLEncoder.encode(frontendUrl, StandardCharsets.UTF_8);
-            
-            log.info("Step 2: 調用 Keycloak end_session_endpoint 清除服務器端 session: {}", endSessionUrl);
-            
-            Mono<String> endSessionResult = getWebClient()
-                    .get()
-                    .uri(endSessionUrl)
-                    .retrieve()
-                    .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(), response -> {
-                        log.warn("Keycloak end_session_endpoint 返回錯誤: HTTP {}", response.statusCode());
-                        return response.bodyToMono(String.class)
-                                .doOnNext(errorBody -> log.warn("Keycloak end_session 錯誤響應: {}", errorBody))
-                                .flatMap(errorBody -> Mono.error(new RuntimeException("Keycloak end_session failed: " + response.statusCode())));
-                    })
-                    .bodyToMono(String.class)
-                    .doOnSuccess(result -> {
-                        log.info("✅ Step 2 完成: 服務器端 session 已清除，響應: {}", result);
-                    })
-                    .doOnError(error -> {
-                        log.warn("⚠️ Step 2 警告: Keycloak end_session_endpoint 調用失敗", error);
-                    })
-                    .onErrorReturn("End session completed (may have failed)");
-
-            // 等待兩個操作都完成
-            return Mono.zip(revokeTokenResult, endSessionResult)
-                    .then(Mono.just(org.springframework.http.ResponseEntity.ok(MessageKey.LOGOUT_SUCCESS.getMessage())));
-        } else {
+        if (idToken == null || idToken.isEmpty()) {
             log.warn("⚠️ 沒有 id_token，無法調用 end_session_endpoint 清除服務器端 session");
-            log.warn("⚠️ 只有 refresh token 被撤銷，服務器端 session 可能仍然存在");
-            return revokeTokenResult
-                    .then(Mono.just(org.springframework.http.ResponseEntity.ok(MessageKey.LOGOUT_SUCCESS.getMessage())));
         }
+        keycloakLogoutQueue.submit(refreshToken, idToken);
+        return Mono.just(org.springframework.http.ResponseEntity.ok(MessageKey.LOGOUT_SUCCESS.getMessage()));
     }
 
     /**
      * 檢查指定的 access token 是否有效，並在必要時使用 refresh token 進行續期
      * 
-     * 此方法會先呼叫 Keycloak 的 introspection 端點檢查存取憑證 (access token) 的有效性，
+     * 此方法會先查詢 introspection 快取並以快取的 JWKS 在本地驗證存取憑證 (access token)，通過時直接回傳；
+     * 否則呼叫 Keycloak 的 introspection 端點檢查存取憑證的有效性，
      * 若 token 有效則直接回傳檢查結果；若 token 無效且同時提供了 refresh token，則會嘗試透過 refresh token 來刷新存取憑證，
      * 若刷新成功，則回傳新取得的 token 資訊並增加 "refreshed" 標記；若刷新失敗，則回傳未授權狀態。
      *
@@ -400,6 +359,16 @@ public class KeycloakController {
             String token,
             String refreshToken) {
 
+        // 快速路徑：快取命中或本地 JWKS 驗證通過時不呼叫 Keycloak
+        return tokenIntrospectionCache.lookup(token)
+                .<org.springframework.http.ResponseEntity<?>>map(org.springframework.http.ResponseEntity::ok)
+                .switchIfEmpty(Mono.defer(() -> introspectRemote(token, refreshToken)));
+    }
+
+    private Mono<org.springframework.http.ResponseEntity<?>> introspectRemote(
+            String token,
+            String refreshToken) {
+
         String introspectUrl = ssoUrl + "/realms/" + realm + "/protocol/openid-connect/token/introspect";
         String tokenUrl = ssoUrl + "/realms/" + realm + "/protocol/openid-connect/token";
 
@@ -442,6 +411,7 @@ public class KeycloakController {
 
                     // Step 2: 如果 token 還有效，直接回傳
                     if (Boolean.TRUE.equals(result.get("active"))) {
+                        tokenIntrospectionCache.store(token, result);
                         return Mono.just(org.springframework.http.ResponseEntity.ok(result));
                     }
 
@@ -453,7 +423,8 @@ public class KeycloakController {
                         refreshParams.add("client_secret", clientSecret);
                         refreshParams.add("refresh_token", refreshToken);
 
-                        return getWebClient()
+                        // 同一個 refresh token 的並行續期合併為一次 grant（rotation 時其餘請求不會失敗）
+                        return tokenRefreshCoalescer.refresh(refreshToken, () -> getWebClient()
                                 .post()
                                 .uri(tokenUrl)
                                 .contentType(MediaType.APPLICATION_FORM_URLENCODED)
@@ -468,7 +439,7 @@ public class KeycloakController {
                                             .doOnNext(errorBody -> log.warn("Keycloak token refresh 錯誤響應: {}", errorBody))
                                             .then(Mono.error(new TokenRefreshFailedException()));
                                 })
-                                .bodyToMono(new org.springframework.core.ParameterizedTypeReference<Map<String, Object>>() {})
+                                .bodyToMono(new org.springframework.core.ParameterizedTypeReference<Map<String, Object>>() {}))
                                 .flatMap(refreshResult -> {
                                     if (refreshResult == null || refreshResult.get("access_token") == null) {
                                         return Mono.just(org.springframework.http.ResponseEntity
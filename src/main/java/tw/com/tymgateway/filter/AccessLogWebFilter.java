@@ -0,0 +1,163 @@
+package tw.com.tymgateway.filter;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * 存取日誌與路由延遲指標
+ *
+ * <p>每個請求完成時輸出一行（logger {@value #ACCESS_LOGGER}，經由 logback 非阻塞的 AsyncAppender），
+ * 內容在各執行緒重複使用的 buffer 中組合：</p>
+ * <ul>
+ *   <li>2xx 響應依 {@code success-sample-rate} 抽樣記錄，其餘狀態與超過 {@code slow-threshold-ms}
+ *       的請求一律記錄；未抽中時不組合任何字串</li>
+ *   <li>處理中發生例外記為 500，客戶端中斷連線記為 499</li>
+ * </ul>
+ *
+ * <p>不論是否記錄日誌，延遲都寫入 {@code gateway.route.requests}（tag: route、outcome）；
+ * route 為 Gateway 路由 id，Controller 處理的請求則為對應的路徑樣式。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class AccessLogWebFilter implements WebFilter, Ordered {
+
+    /**
+     * 存取日誌使用的 logger 名稱（logback-spring.xml 中設定獨立的 appender）
+     */
+    public static final String ACCESS_LOGGER = "tw.com.tymgateway.access";
+
+    private static final Logger accessLog = LoggerFactory.getLogger(ACCESS_LOGGER);
+
+    private static final String[] OUTCOMES = {
+        "UNKNOWN", "INFORMATIONAL", "SUCCESS", "REDIRECTION", "CLIENT_ERROR", "SERVER_ERROR"
+    };
+
+    /** 超過此容量的 buffer 不保留，避免一次超長路徑讓執行緒一直佔用大量記憶體 */
+    private static final int MAX_RETAINED_CAPACITY = 4096;
+
+    private static final ThreadLocal<StringBuilder> LINE = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+    @Value("${gateway.access-log.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gateway.access-log.success-sample-rate:0.1}")
+    private double successSampleRate;
+
+    @Value("${gateway.access-log.slow-threshold-ms:1000}")
+    private long slowThresholdMs;
+
+    public AccessLogWebFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        long startNanos = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signal -> complete(exchange, signal, System.nanoTime() - startNanos));
+    }
+
+    private void complete(ServerWebExchange exchange, SignalType signal, long durationNanos) {
+        int status = status(exchange, signal);
+        String route = routeOf(exchange);
+        timer(route, status).record(durationNanos, TimeUnit.NANOSECONDS);
+
+        if (!enabled || !accessLog.isInfoEnabled()) {
+            return;
+        }
+        long durationMs = durationNanos / 1_000_000;
+        boolean success = status >= 200 && status < 300;
+        if (success && durationMs < slowThresholdMs
+                && (successSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= successSampleRate)) {
+            return;
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        StringBuilder line = LINE.get();
+        line.setLength(0);
+        line.append(request.getMethod().name()).append(' ')
+                .append(request.getPath().value()).append(' ')
+                .append(status).append(' ')
+                .append(durationMs).append("ms route=")
+                .append(route).append(" client=");
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        line.append(remoteAddress != null ? remoteAddress.getHostString() : "-");
+        accessLog.info(line.toString());
+        if (line.capacity() > MAX_RETAINED_CAPACITY) {
+            LINE.remove();
+        }
+    }
+
+    private static int status(ServerWebExchange exchange, SignalType signal) {
+        if (signal == SignalType.ON_ERROR) {
+            return 500;
+        }
+        if (signal == SignalType.CANCEL) {
+            return 499;
+        }
+        HttpStatusCode statusCode = exchange.getResponse().getStatusCode();
+        return statusCode != null ? statusCode.value() : 200;
+    }
+
+    private static String routeOf(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route != null) {
+            return route.getId();
+        }
+        Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern instanceof PathPattern pathPattern) {
+            return pathPattern.getPatternString();
+        }
+        return "none";
+    }
+
+    private Timer timer(String route, int status) {
+        int index = status >= 100 && status < 600 ? status / 100 : 0;
+        Timer[] byOutcome = timers.computeIfAbsent(route, key -> new Timer[OUTCOMES.length]);
+        Timer timer = byOutcome[index];
+        if (timer == null) {
+            // 併發時重複註冊會取得同一個 Timer
+            timer = Timer.builder("gateway.route.requests")
+                    .tag("route", route)
+                    .tag("outcome", OUTCOMES[index])
+                    .description("各路由的請求處理時間")
+                    .register(meterRegistry);
+            byOutcome[index] = timer;
+        }
+        return timer;
+    }
+
+    @Override
+    public int getOrder() {
+        // 緊接在 CORS 之後，涵蓋限流、安全驗證與路由的完整處理時間
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+}
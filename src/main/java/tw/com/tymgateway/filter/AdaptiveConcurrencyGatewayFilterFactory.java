@@ -0,0 +1,82 @@
+package tw.com.tymgateway.filter;
+
+import java.util.List;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.config.BackendFailurePredicate;
+import tw.com.tymgateway.service.AdaptiveConcurrencyLimiter;
+
+/**
+ * 自適應併發限制過濾器
+ *
+ * <p>讓 YAML 路由與異步代理共用 {@link AdaptiveConcurrencyLimiter} 的同一個路由群組上限。
+ * 後端回應 502 / 503 / 504、逾時或連線錯誤時視為 drop 並收縮上限。超過上限時拋出
+ * {@link AdaptiveConcurrencyLimiter.LimitExceededException}，應放在 {@code CircuitBreaker}
+ * 過濾器之後以走 fallbackUri。</p>
+ *
+ * <pre>
+ * filters:
+ *   - AdaptiveConcurrency=weapons
+ * </pre>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class AdaptiveConcurrencyGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<AdaptiveConcurrencyGatewayFilterFactory.Config> {
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    public AdaptiveConcurrencyGatewayFilterFactory(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        super(Config.class);
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("group");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return (exchange, chain) -> {
+            if (!concurrencyLimiter.isEnabled()) {
+                return chain.filter(exchange);
+            }
+            return Mono.usingWhen(
+                    concurrencyLimiter.acquire(config.getGroup()),
+                    permit -> chain.filter(exchange),
+                    permit -> Mono.fromRunnable(() -> permit.release(isOverloaded(exchange.getResponse().getStatusCode()))),
+                    (permit, error) -> Mono.fromRunnable(
+                            () -> permit.release(BackendFailurePredicate.isBackendFailure(error))),
+                    permit -> Mono.fromRunnable(permit::abandon));
+        };
+    }
+
+    private boolean isOverloaded(HttpStatusCode status) {
+        return status != null && (status.value() == 502 || status.value() == 503 || status.value() == 504);
+    }
+
+    /**
+     * 併發限制過濾器配置
+     */
+    public static class Config {
+
+        /** 路由群組名稱（與異步代理的模組名稱一致） */
+        private String group;
+
+        public String getGroup() {
+            return group;
+        }
+
+        public void setGroup(String group) {
+            this.group = group;
+        }
+    }
+}
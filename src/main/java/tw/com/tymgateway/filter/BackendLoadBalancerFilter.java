@@ -0,0 +1,108 @@
+package tw.com.tymgateway.filter;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.service.BackendInstanceSelector;
+
+/**
+ * 後端負載平衡過濾器
+ *
+ * <p>把路由 URI {@code lb://tymb-backend} 改寫為 {@link BackendInstanceSelector} 選出的實例，
+ * 並在請求結束時回報延遲與成功與否。放在 RouteToRequestUrlFilter 之後、NettyRoutingFilter 之前，
+ * 與 Spring Cloud LoadBalancer 的 ReactiveLoadBalancerClientFilter 位置相同。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class BackendLoadBalancerFilter implements GlobalFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendLoadBalancerFilter.class);
+
+    /** 與 ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER 相同 */
+    public static final int ORDER = 10150;
+
+    /** 選出的後端實例，供 hedging 等後續過濾器使用 */
+    public static final String BACKEND_INSTANCE_ATTR = BackendLoadBalancerFilter.class.getName() + ".instance";
+
+    private final BackendInstanceSelector instanceSelector;
+    private final String serviceId;
+
+    public BackendLoadBalancerFilter(
+            BackendInstanceSelector instanceSelector,
+            @Value("${gateway.backend.service-id:tymb-backend}") String serviceId) {
+        this.instanceSelector = instanceSelector;
+        this.serviceId = serviceId;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (url == null || !"lb".equals(url.getScheme()) || !serviceId.equalsIgnoreCase(url.getHost())) {
+            return chain.filter(exchange);
+        }
+        ServerWebExchangeUtils.addOriginalRequestUrl(exchange, url);
+
+        BackendInstanceSelector.Instance instance = instanceSelector.choose()
+                .orElseThrow(() -> NotFoundException.create(true, "No backend instance available for " + serviceId));
+        URI target = rewrite(url, instance.getBaseUri());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, target);
+        exchange.getAttributes().put(BACKEND_INSTANCE_ATTR, instance);
+        logger.debug("負載平衡: {} -> {}", url, target);
+
+        long start = instance.begin();
+        AtomicBoolean done = new AtomicBoolean();
+        return chain.filter(exchange)
+                .doOnSuccess(ignored -> {
+                    if (done.compareAndSet(false, true)) {
+                        instance.end(start, !isServerError(exchange.getResponse().getStatusCode()));
+                    }
+                })
+                .doOnError(error -> {
+                    if (done.compareAndSet(false, true)) {
+                        instance.end(start, false);
+                    }
+                })
+                .doOnCancel(() -> {
+                    if (done.compareAndSet(false, true)) {
+                        instance.cancel();
+                    }
+                });
+    }
+
+    /**
+     * 以實例的 scheme / host / port 取代邏輯服務名稱，保留 path 與 query
+     */
+    public static URI rewrite(URI original, URI instanceBase) {
+        return UriComponentsBuilder.fromUri(original)
+                .scheme(instanceBase.getScheme())
+                .host(instanceBase.getHost())
+                .port(instanceBase.getPort())
+                .build(true)
+                .toUri();
+    }
+
+    private boolean isServerError(HttpStatusCode status) {
+        return status != null && status.is5xxServerError();
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
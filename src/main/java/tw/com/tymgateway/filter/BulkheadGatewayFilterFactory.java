@@ -0,0 +1,67 @@
+package tw.com.tymgateway.filter;
+
+import java.util.List;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.stereotype.Component;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+
+/**
+ * 信號量隔艙過濾器
+ *
+ * <p>限制單一後端模組同時進行中的路由請求數，實例配置於 {@code resilience4j.bulkhead.instances}。
+ * 隔艙已滿時拋出 {@code BulkheadFullException}，應放在 {@code CircuitBreaker} 過濾器之後，
+ * 由熔斷器的 fallbackUri 轉到 {@code FallbackController}。</p>
+ *
+ * <pre>
+ * filters:
+ *   - name: Bulkhead
+ *     args:
+ *       name: weapons
+ * </pre>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class BulkheadGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<BulkheadGatewayFilterFactory.Config> {
+
+    private final BulkheadRegistry bulkheadRegistry;
+
+    public BulkheadGatewayFilterFactory(BulkheadRegistry bulkheadRegistry) {
+        super(Config.class);
+        this.bulkheadRegistry = bulkheadRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("name");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        BulkheadOperator<Void> operator = BulkheadOperator.of(bulkheadRegistry.bulkhead(config.getName()));
+        return (exchange, chain) -> chain.filter(exchange).transformDeferred(operator);
+    }
+
+    /**
+     * 隔艙過濾器配置
+     */
+    public static class Config {
+
+        /** resilience4j 隔艙實例名稱（模組名稱） */
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
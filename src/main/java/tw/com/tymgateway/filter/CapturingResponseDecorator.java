@@ -0,0 +1,88 @@
+package tw.com.tymgateway.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 複製響應主體的 Response 裝飾器
+ *
+ * <p>響應照常串流給客戶端，同時把內容複製一份；主體完整寫出且未超過上限時，
+ * 以完整 byte[] 呼叫回調。供快取類過濾器記錄後端響應使用。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+public class CapturingResponseDecorator extends ServerHttpResponseDecorator {
+
+    private final int maxBytes;
+    private final Predicate<ServerHttpResponse> capturable;
+    private final Consumer<byte[]> onCaptured;
+
+    /**
+     * @param delegate   原始響應
+     * @param maxBytes   最多複製的位元組數，超過則放棄複製
+     * @param capturable 寫出主體時判斷是否需要複製（此時狀態碼與 header 已確定）
+     * @param onCaptured 複製完成的回調
+     */
+    public CapturingResponseDecorator(ServerHttpResponse delegate, int maxBytes,
+            Predicate<ServerHttpResponse> capturable, Consumer<byte[]> onCaptured) {
+        super(delegate);
+        this.maxBytes = maxBytes;
+        this.capturable = capturable;
+        this.onCaptured = onCaptured;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        if (!capturable.test(getDelegate())) {
+            return super.writeWith(body);
+        }
+        long contentLength = getHeaders().getContentLength();
+        if (contentLength > maxBytes) {
+            return super.writeWith(body);
+        }
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 1024);
+        boolean[] overflow = new boolean[1];
+        Flux<? extends DataBuffer> tee = Flux.from(body)
+                .doOnNext(buffer -> {
+                    if (overflow[0]) {
+                        return;
+                    }
+                    if (copy.size() + buffer.readableByteCount() > maxBytes) {
+                        overflow[0] = true;
+                        copy.reset();
+                        return;
+                    }
+                    try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                        while (iterator.hasNext()) {
+                            ByteBuffer byteBuffer = iterator.next();
+                            byte[] chunk = new byte[byteBuffer.remaining()];
+                            byteBuffer.get(chunk);
+                            copy.write(chunk, 0, chunk.length);
+                        }
+                    }
+                })
+                .doOnComplete(() -> {
+                    if (!overflow[0]) {
+                        onCaptured.accept(copy.toByteArray());
+                    }
+                });
+        return super.writeWith(tee);
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        return writeWith(Flux.from(body).flatMapSequential(publisher -> publisher));
+    }
+}
@@ -0,0 +1,337 @@
+package tw.com.tymgateway.filter;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import tw.com.tymgateway.service.BackendInstanceSelector;
+
+/**
+ * Hedged request 過濾器（僅限冪等的 GET / HEAD 路由）
+ *
+ * <p>主請求在該路由觀察到的 p95 延遲內沒有回應時，再送出第二個請求（盡量送往另一個後端實例），
+ * 取先回應者，另一個請求會被取消。額外流量受全域 hedge 預算限制：每個請求累積
+ * {@code budget-percent}% 的額度，每次 hedge 消耗 1。</p>
+ *
+ * <p>放在負載平衡過濾器之後、NettyRoutingFilter 之前執行，自行送出請求並寫回響應。
+ * 與 NettyRoutingFilter 相同：未設定 {@code PreserveHostHeader} 時移除客戶端的 {@code Host}，
+ * 每個請求套用路由 metadata 的 {@code response-timeout}（未設定時為
+ * {@code spring.cloud.gateway.httpclient.response-timeout}），逾時回應 504。</p>
+ *
+ * <pre>
+ * filters:
+ *   - Hedge
+ * </pre>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class HedgeGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgeGatewayFilterFactory.class);
+
+    /** 在 BackendLoadBalancerFilter 之後執行，才能取得選出的實例 */
+    private static final int ORDER = BackendLoadBalancerFilter.ORDER + 1;
+
+    /** 每個路由保留的延遲樣本數 */
+    private static final int LATENCY_SAMPLES = 256;
+
+    /** 每收到多少個樣本重新計算一次 p95 */
+    private static final int RECOMPUTE_EVERY = 32;
+
+    /** 預算額度以千分之一為單位累積 */
+    private static final long TOKEN_SCALE = 1000;
+
+    private final WebClient hedgeWebClient;
+    private final BackendInstanceSelector instanceSelector;
+    private final ObjectProvider<List<HttpHeadersFilter>> headersFilters;
+    private final HttpClientProperties httpClientProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, RouteLatency> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong budgetTokens = new AtomicLong();
+
+    @Value("${gateway.hedging.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gateway.hedging.budget-percent:5}")
+    private double budgetPercent;
+
+    @Value("${gateway.hedging.max-budget-tokens:20}")
+    private long maxBudgetTokens;
+
+    @Value("${gateway.hedging.min-samples:50}")
+    private int minSamples;
+
+    @Value("${gateway.hedging.min-delay-ms:20}")
+    private long minDelayMs;
+
+    @Value("${gateway.hedging.max-delay-ms:2000}")
+    private long maxDelayMs;
+
+    public HedgeGatewayFilterFactory(
+            HttpClient backendHttpClient,
+            BackendInstanceSelector instanceSelector,
+            ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+            HttpClientProperties httpClientProperties,
+            MeterRegistry meterRegistry) {
+        this.hedgeWebClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(backendHttpClient))
+                .build();
+        this.instanceSelector = instanceSelector;
+        this.headersFilters = headersFilters;
+        this.httpClientProperties = httpClientProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Object config) {
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            HttpMethod method = exchange.getRequest().getMethod();
+            URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+            if (!enabled || (method != HttpMethod.GET && method != HttpMethod.HEAD)
+                    || url == null || !url.getScheme().startsWith("http")
+                    || ServerWebExchangeUtils.isAlreadyRouted(exchange)) {
+                return chain.filter(exchange);
+            }
+            ServerWebExchangeUtils.setAlreadyRouted(exchange);
+            return hedgedRoute(exchange, url);
+        }, ORDER);
+    }
+
+    private Mono<Void> hedgedRoute(ServerWebExchange exchange, URI url) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String routeId = route != null ? route.getId() : "unknown";
+        RouteLatency routeLatency = latencies.computeIfAbsent(routeId, this::createRouteLatency);
+        addBudget();
+
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.addAll(HttpHeadersFilter.filterRequest(headersFilters.getIfAvailable(), exchange));
+        if (!Boolean.TRUE.equals(exchange.getAttribute(ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE))) {
+            // 由 HttpClient 依目標 URL 設定 Host
+            requestHeaders.remove(HttpHeaders.HOST);
+        }
+        Duration responseTimeout = responseTimeout(route);
+        long start = System.nanoTime();
+
+        Mono<ResponseEntity<Flux<DataBuffer>>> primary = send(exchange, url, requestHeaders, responseTimeout);
+        Mono<ResponseEntity<Flux<DataBuffer>>> response;
+        Duration delay = routeLatency.hedgeDelay();
+        if (delay == null) {
+            response = primary;
+        } else {
+            Mono<ResponseEntity<Flux<DataBuffer>>> hedged = Mono.defer(() -> {
+                if (!tryConsumeBudget()) {
+                    routeLatency.budgetExhausted.increment();
+                    return Mono.empty();
+                }
+                return secondary(exchange, url, requestHeaders, responseTimeout, routeLatency);
+            });
+            response = Mono.firstWithValue(primary, Mono.delay(delay).then(hedged))
+                    .onErrorMap(NoSuchElementException.class, this::unwrapFirstError);
+        }
+        return response
+                .onErrorMap(TimeoutException.class,
+                        error -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, error.getMessage(), error))
+                .flatMap(entity -> {
+                    routeLatency.record(System.nanoTime() - start);
+                    return writeResponse(exchange, entity);
+                });
+    }
+
+    /**
+     * 路由的響應逾時，與 NettyRoutingFilter 相同：metadata {@code response-timeout}（毫秒，負值表示不限制）
+     * 優先，否則使用 {@code spring.cloud.gateway.httpclient.response-timeout}
+     *
+     * @return 逾時時間；不限制時為 null
+     */
+    private Duration responseTimeout(Route route) {
+        Object value = route != null ? route.getMetadata().get(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR) : null;
+        if (value == null) {
+            return httpClientProperties.getResponseTimeout();
+        }
+        long millis = value instanceof Number number ? number.longValue() : Long.parseLong(value.toString());
+        return millis < 0 ? null : Duration.ofMillis(millis);
+    }
+
+    /**
+     * {@code Mono.firstWithValue} 全部失敗時會包成 NoSuchElementException，還原為主請求的原始錯誤，
+     * 讓熔斷器看到的例外與一般路由相同
+     */
+    private Throwable unwrapFirstError(NoSuchElementException error) {
+        if (error.getCause() == null) {
+            return error;
+        }
+        List<Throwable> causes = Exceptions.unwrapMultiple(error.getCause());
+        return causes.isEmpty() ? error : causes.get(0);
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> secondary(ServerWebExchange exchange, URI url,
+            HttpHeaders requestHeaders, Duration responseTimeout, RouteLatency routeLatency) {
+        BackendInstanceSelector.Instance primaryInstance = exchange.getAttribute(BackendLoadBalancerFilter.BACKEND_INSTANCE_ATTR);
+        if (primaryInstance == null) {
+            routeLatency.sent.increment();
+            return send(exchange, url, requestHeaders, responseTimeout).doOnNext(entity -> routeLatency.won.increment());
+        }
+        return instanceSelector.choose(primaryInstance)
+                .map(instance -> {
+                    routeLatency.sent.increment();
+                    URI target = BackendLoadBalancerFilter.rewrite(url, instance.getBaseUri());
+                    logger.debug("Hedged request: {} -> {}", url, target);
+                    long start = instance.begin();
+                    AtomicBoolean done = new AtomicBoolean();
+                    return send(exchange, target, requestHeaders, responseTimeout)
+                            .doOnNext(entity -> {
+                                routeLatency.won.increment();
+                                if (done.compareAndSet(false, true)) {
+                                    instance.end(start, !entity.getStatusCode().is5xxServerError());
+                                }
+                            })
+                            .doOnError(error -> {
+                                if (done.compareAndSet(false, true)) {
+                                    instance.end(start, false);
+                                }
+                            })
+                            .doOnCancel(() -> {
+                                if (done.compareAndSet(false, true)) {
+                                    instance.cancel();
+                                }
+                            });
+                })
+                .orElseGet(Mono::empty);
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> send(ServerWebExchange exchange, URI url, HttpHeaders headers,
+            Duration responseTimeout) {
+        Mono<ResponseEntity<Flux<DataBuffer>>> request = hedgeWebClient.method(exchange.getRequest().getMethod())
+                .uri(url)
+                .headers(target -> target.addAll(headers))
+                .retrieve()
+                .onStatus(status -> true, response -> Mono.empty())
+                .toEntityFlux(DataBuffer.class);
+        if (responseTimeout == null) {
+            return request;
+        }
+        return request.timeout(responseTimeout, Mono.error(() -> new TimeoutException(
+                "Response took longer than timeout: " + responseTimeout)));
+    }
+
+    private Mono<Void> writeResponse(ServerWebExchange exchange, ResponseEntity<Flux<DataBuffer>> entity) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(entity.getStatusCode());
+        HttpHeaders filtered = HttpHeadersFilter.filter(headersFilters.getIfAvailable(), entity.getHeaders(),
+                exchange, HttpHeadersFilter.Type.RESPONSE);
+        filtered.remove(HttpHeaders.TRANSFER_ENCODING);
+        response.getHeaders().putAll(filtered);
+        Flux<DataBuffer> body = entity.getBody() != null ? entity.getBody() : Flux.empty();
+        return response.writeWith(body);
+    }
+
+    private void addBudget() {
+        long increment = (long) (budgetPercent / 100 * TOKEN_SCALE);
+        budgetTokens.updateAndGet(tokens -> Math.min(maxBudgetTokens * TOKEN_SCALE, tokens + increment));
+    }
+
+    private boolean tryConsumeBudget() {
+        while (true) {
+            long tokens = budgetTokens.get();
+            if (tokens < TOKEN_SCALE) {
+                return false;
+            }
+            if (budgetTokens.compareAndSet(tokens, tokens - TOKEN_SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    private RouteLatency createRouteLatency(String routeId) {
+        return new RouteLatency(
+                Counter.builder("gateway.hedge.sent").tag("route", routeId)
+                        .description("送出的 hedged request 數").register(meterRegistry),
+                Counter.builder("gateway.hedge.won").tag("route", routeId)
+                        .description("hedged request 先於主請求回應的次數").register(meterRegistry),
+                Counter.builder("gateway.hedge.budget.exhausted").tag("route", routeId)
+                        .description("因預算不足而未送出 hedged request 的次數").register(meterRegistry));
+    }
+
+    /**
+     * 單一路由的延遲樣本（環狀緩衝），定期重新計算 p95
+     */
+    private final class RouteLatency {
+
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private final Counter sent;
+        private final Counter won;
+        private final Counter budgetExhausted;
+        private volatile int count;
+        private int next;
+        private volatile long p95Nanos;
+
+        RouteLatency(Counter sent, Counter won, Counter budgetExhausted) {
+            this.sent = sent;
+            this.won = won;
+            this.budgetExhausted = budgetExhausted;
+        }
+
+        synchronized void record(long latencyNanos) {
+            samples[next] = latencyNanos;
+            next = (next + 1) % LATENCY_SAMPLES;
+            count++;
+            if (count % RECOMPUTE_EVERY == 0) {
+                int size = Math.min(count, LATENCY_SAMPLES);
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                p95Nanos = sorted[(int) Math.ceil(size * 0.95) - 1];
+            }
+        }
+
+        /**
+         * @return hedge 延遲；樣本不足時為 null（不 hedge），避免冷啟動時用不準確的 p95
+         */
+        Duration hedgeDelay() {
+            if (count < minSamples || p95Nanos == 0) {
+                return null;
+            }
+            long delayMs = Math.max(minDelayMs, Math.min(maxDelayMs, p95Nanos / 1_000_000));
+            return Duration.ofMillis(delayMs);
+        }
+    }
+}
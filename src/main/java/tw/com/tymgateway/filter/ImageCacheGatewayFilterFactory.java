@@ -0,0 +1,148 @@
+package tw.com.tymgateway.filter;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.service.ImageDiskCache;
+import tw.com.tymgateway.service.ResponseCache;
+
+/**
+ * 圖片快取過濾器（heap 熱資料 + 磁碟）
+ *
+ * <p>只處理 {@code image/*} 的 GET 200 響應。命中磁碟層時以 {@link ZeroCopyHttpOutputMessage}
+ * 直接把檔案交給 Netty 傳送（sendfile，TLS 或壓縮時由 Reactor Netty 自動改為分段讀取），
+ * 主體不經過 heap。未命中時響應照常串流給客戶端，同時逐區塊寫入磁碟暫存檔（{@link ImageDiskCache.Capture}），
+ * 不在 heap 中累積整張圖片。應放在 {@code ResponseCache} 之前。</p>
+ *
+ * <pre>
+ * filters:
+ *   - ImageCache
+ * </pre>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class ImageCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+    /** 非 zero-copy 時每次讀取的區塊大小 */
+    private static final int READ_CHUNK_BYTES = 64 * 1024;
+
+    private final ImageDiskCache imageDiskCache;
+    private final Duration defaultTtl;
+
+    public ImageCacheGatewayFilterFactory(
+            ImageDiskCache imageDiskCache,
+            @Value("${gateway.image-cache.default-ttl-seconds:86400}") long defaultTtlSeconds) {
+        this.imageDiskCache = imageDiskCache;
+        this.defaultTtl = Duration.ofSeconds(defaultTtlSeconds);
+    }
+
+    @Override
+    public GatewayFilter apply(Object config) {
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (!imageDiskCache.isEnabled() || request.getMethod() != HttpMethod.GET
+                    || ResponseCache.bypassRequested(request)) {
+                return chain.filter(exchange);
+            }
+            String key = ResponseCacheGatewayFilterFactory.cacheKey(exchange);
+            Optional<ImageDiskCache.Hit> hit = imageDiskCache.lookup(key);
+            if (hit.isPresent()) {
+                // 傳送結束後才允許刪除主體檔（淘汰或被取代時）
+                return writeHit(exchange, hit.get()).doFinally(signal -> hit.get().release());
+            }
+            return chain.filter(exchange.mutate().response(new DiskCapturingResponse(exchange, key)).build());
+        };
+    }
+
+    /**
+     * 把可快取的圖片響應邊傳送邊寫入磁碟快取
+     */
+    private final class DiskCapturingResponse extends ServerHttpResponseDecorator {
+
+        private final ServerWebExchange exchange;
+        private final String key;
+
+        DiskCapturingResponse(ServerWebExchange exchange, String key) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.key = key;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            ServerHttpResponse response = getDelegate();
+            if (!isCacheableImage(response) || response.getHeaders().getContentLength() > imageDiskCache.getMaxEntryBytes()) {
+                return super.writeWith(body);
+            }
+            Optional<Duration> ttl = ResponseCache.cacheTtl(exchange.getRequest(), response.getHeaders(), defaultTtl);
+            if (ttl.isEmpty()) {
+                return super.writeWith(body);
+            }
+            ImageDiskCache.Capture capture = imageDiskCache.beginCapture(key, response.getHeaders(), ttl.get());
+            Flux<? extends DataBuffer> tee = Flux.from(body)
+                    .doOnNext(capture::append)
+                    .doOnComplete(capture::complete)
+                    .doOnError(error -> capture.abort())
+                    .doOnCancel(capture::abort);
+            return super.writeWith(tee);
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return writeWith(Flux.from(body).flatMapSequential(publisher -> publisher));
+        }
+    }
+
+    private boolean isCacheableImage(ServerHttpResponse response) {
+        MediaType contentType = response.getHeaders().getContentType();
+        return response.getStatusCode() == HttpStatus.OK
+                && contentType != null
+                && "image".equalsIgnoreCase(contentType.getType())
+                && !response.getHeaders().containsKey(HttpHeaders.WARNING);
+    }
+
+    private Mono<Void> writeHit(ServerWebExchange exchange, ImageDiskCache.Hit hit) {
+        ServerWebExchangeUtils.setAlreadyRouted(exchange);
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().putAll(hit.headers());
+        response.getHeaders().set(HttpHeaders.AGE, String.valueOf(hit.ageSeconds()));
+        response.getHeaders().set(ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER, "HIT");
+
+        String etag = hit.headers().getETag();
+        if (etag != null && exchange.getRequest().getHeaders().getIfNoneMatch().contains(etag)) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setContentLength(hit.size());
+        if (hit.bytes() != null) {
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(hit.bytes())));
+        }
+        if (response instanceof ZeroCopyHttpOutputMessage zeroCopy) {
+            return zeroCopy.writeWith(hit.path(), 0, hit.size());
+        }
+        return response.writeWith(DataBufferUtils.read(hit.path(), response.bufferFactory(), READ_CHUNK_BYTES));
+    }
+}
@@ -1,60 +0,0 @@
-package tw.com.tymgateway.filter;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.cloud.gateway.filter.GatewayFilterChain;
-import org.springframework.cloud.gateway.filter.GlobalFilter;
-import org.springframework.core.Ordered;
-import org.springframework.http.server.reactive.ServerHttpRequest;
-import org.springframework.http.server.reactive.ServerHttpResponse;
-import org.springframework.stereotype.Component;
-import org.springframework.web.server.ServerWebExchange;
-import reactor.core.publisher.Mono;
-
-import java.time.Duration;
-import java.time.Instant;
-
-/**
- * 全局日誌過濾器
- * 
- * <p>記錄所有通過 Gateway 的請求和響應信息</p>
- * 
- * @author TY Team
- * @version 1.0
- */
-@Component
-public class LoggingGlobalFilter implements GlobalFilter, Ordered {
-
-    private static final Logger logger = LoggerFactory.getLogger(LoggingGlobalFilter.class);
-
-    @Override
-    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        ServerHttpRequest request = exchange.getRequest();
-        Instant startTime = Instant.now();
-        
-        // 記錄請求信息
-        logger.info("Gateway Request: {} {} from {}",
-                request.getMethod(),
-                request.getURI().getPath(),
-                request.getRemoteAddress());
-
-        return chain.filter(exchange).then(Mono.fromRunnable(() -> {
-            ServerHttpResponse response = exchange.getResponse();
-            Instant endTime = Instant.now();
-            Duration duration = Duration.between(startTime, endTime);
-            
-            // 記錄響應信息
-            logger.info("Gateway Response: {} {} - Status: {} - Duration: {}ms",
-                    request.getMethod(),
-                    request.getURI().getPath(),
-                    response.getStatusCode(),
-                    duration.toMillis());
-        }));
-    }
-
-    @Override
-    public int getOrder() {
-        return Ordered.LOWEST_PRECEDENCE;
-    }
-}
-
@@ -0,0 +1,106 @@
+package tw.com.tymgateway.filter;
+
+import java.net.InetSocketAddress;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.service.DistributedRateLimiter;
+import tw.com.tymgateway.service.StartupWarmupService;
+
+/**
+ * 請求限流過濾器
+ *
+ * <p>在 Spring Security 之後執行：帶有效 JWT 的請求以 subject 計算，其餘以客戶端 IP 計算。
+ * 預設使用連線的來源位址；只有 Gateway 前方一定有會附加 {@code X-Forwarded-For} 的 ingress 時才開啟
+ * {@code gateway.rate-limit.trust-forwarded-for}（取最後一個位址），否則客戶端可自行更換 header 繞過限流。
+ * 超過上限時回應 429 與 {@code Retry-After}。規則與計算方式見 {@link DistributedRateLimiter}。</p>
+ *
+ * <p>啟動預熱對本機的請求（{@link StartupWarmupService#isWarmupRequest}）不限流。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class RateLimitWebFilter implements WebFilter, Ordered {
+
+    private static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+    private final DistributedRateLimiter rateLimiter;
+    private final StartupWarmupService startupWarmupService;
+    private final boolean trustForwardedFor;
+
+    public RateLimitWebFilter(
+            DistributedRateLimiter rateLimiter,
+            StartupWarmupService startupWarmupService,
+            @Value("${gateway.rate-limit.trust-forwarded-for:false}") boolean trustForwardedFor) {
+        this.rateLimiter = rateLimiter;
+        this.startupWarmupService = startupWarmupService;
+        this.trustForwardedFor = trustForwardedFor;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!rateLimiter.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        if (startupWarmupService.isWarmupRequest(request)) {
+            return chain.filter(exchange);
+        }
+        String routeId = rateLimiter.match(request.getMethod(), request.getPath().pathWithinApplication());
+        if (routeId == null) {
+            return chain.filter(exchange);
+        }
+        return exchange.getPrincipal()
+                .filter(principal -> principal instanceof Authentication authentication
+                        && authentication.isAuthenticated()
+                        && !(authentication instanceof AnonymousAuthenticationToken))
+                .map(principal -> "user:" + principal.getName())
+                .switchIfEmpty(Mono.fromSupplier(() -> "ip:" + clientIp(request)))
+                .flatMap(clientKey -> {
+                    DistributedRateLimiter.Decision decision = rateLimiter.tryAcquire(routeId, clientKey);
+                    if (decision.allowed()) {
+                        return chain.filter(exchange);
+                    }
+                    ServerHttpResponse response = exchange.getResponse();
+                    response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                    response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(decision.retryAfterSeconds()));
+                    return response.setComplete();
+                });
+    }
+
+    private String clientIp(ServerHttpRequest request) {
+        if (trustForwardedFor) {
+            String forwardedFor = request.getHeaders().getFirst(FORWARDED_FOR_HEADER);
+            if (forwardedFor != null && !forwardedFor.isBlank()) {
+                // 前面的位址可由客戶端自行帶入，只採用最靠近 Gateway 的一個
+                return forwardedFor.substring(forwardedFor.lastIndexOf(',') + 1).trim();
+            }
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null) {
+            return "unknown";
+        }
+        return remoteAddress.getAddress() != null
+                ? remoteAddress.getAddress().getHostAddress()
+                : remoteAddress.getHostString();
+    }
+
+    @Override
+    public int getOrder() {
+        // Spring Security WebFilterChainProxy 為 -100，需在其後才能取得已驗證的使用者
+        return 0;
+    }
+}
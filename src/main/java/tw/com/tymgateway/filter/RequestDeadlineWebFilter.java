@@ -0,0 +1,76 @@
+package tw.com.tymgateway.filter;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/**
+ * 請求截止時間過濾器
+ *
+ * <p>讀取客戶端帶入的 {@value #DEADLINE_HEADER}（epoch 毫秒的絕對時間），
+ * 放入 exchange 屬性與 Reactor Context，讓異步代理可以依此縮短自己的等待時間，
+ * 並把截止時間繼續傳給 Backend / Consumer。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class RequestDeadlineWebFilter implements WebFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestDeadlineWebFilter.class);
+
+    /**
+     * 截止時間 header（epoch 毫秒）
+     */
+    public static final String DEADLINE_HEADER = "X-Request-Deadline";
+
+    /**
+     * exchange 屬性與 Reactor Context 使用的 key
+     */
+    public static final String DEADLINE_ATTR = RequestDeadlineWebFilter.class.getName() + ".deadline";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String headerValue = exchange.getRequest().getHeaders().getFirst(DEADLINE_HEADER);
+        if (headerValue == null || headerValue.isBlank()) {
+            return chain.filter(exchange);
+        }
+
+        Instant deadline;
+        try {
+            deadline = Instant.ofEpochMilli(Long.parseLong(headerValue.trim()));
+        } catch (NumberFormatException e) {
+            logger.debug("忽略格式錯誤的截止時間 header: {}={}", DEADLINE_HEADER, headerValue);
+            return chain.filter(exchange);
+        }
+
+        exchange.getAttributes().put(DEADLINE_ATTR, deadline);
+        return chain.filter(exchange)
+                .contextWrite(context -> context.put(DEADLINE_ATTR, deadline));
+    }
+
+    /**
+     * 從 Reactor Context 取得客戶端截止時間
+     *
+     * @param context Reactor Context
+     * @return 客戶端截止時間（未提供時為空）
+     */
+    public static Optional<Instant> clientDeadline(ContextView context) {
+        return context.getOrEmpty(DEADLINE_ATTR);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 10;
+    }
+}
@@ -0,0 +1,175 @@
+package tw.com.tymgateway.filter;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.service.ResponseCache;
+
+/**
+ * 路由 GET 響應快取過濾器
+ *
+ * <p>命中時直接由 Gateway 回應（{@code X-Cache: HIT}），不經過熔斷、隔艙與後端；未命中時記錄後端的
+ * 200 響應；同一模組（例如 {@code /tymg/weapons}）的寫入請求成功後清除該模組的快取。
+ * 應放在 {@code CircuitBreaker} 之前。參數為響應沒有 max-age 時的 TTL（秒），
+ * 省略時使用 {@code gateway.response-cache.default-ttl-seconds}；設為負數時只快取後端明確指定
+ * max-age 的響應。</p>
+ *
+ * <pre>
+ * filters:
+ *   - ResponseCache=60
+ * </pre>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class ResponseCacheGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+
+    /** 響應 header：HIT / MISS */
+    public static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    private final ResponseCache responseCache;
+    private final boolean enabled;
+    private final long defaultTtlSeconds;
+
+    public ResponseCacheGatewayFilterFactory(
+            ResponseCache responseCache,
+            @Value("${gateway.response-cache.enabled:true}") boolean enabled,
+            @Value("${gateway.response-cache.default-ttl-seconds:60}") long defaultTtlSeconds) {
+        super(Config.class);
+        this.responseCache = responseCache;
+        this.enabled = enabled;
+        this.defaultTtlSeconds = defaultTtlSeconds;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("ttlSeconds");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Duration ttl = config.getTtlSeconds() < 0
+                ? Duration.ZERO
+                : Duration.ofSeconds(config.getTtlSeconds() > 0 ? config.getTtlSeconds() : defaultTtlSeconds);
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (!enabled || request.getMethod() == HttpMethod.HEAD || request.getMethod() == HttpMethod.OPTIONS) {
+                return chain.filter(exchange);
+            }
+            if (request.getMethod() != HttpMethod.GET) {
+                return chain.filter(exchange).doOnSuccess(ignored -> {
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    if (status != null && status.is2xxSuccessful()) {
+                        responseCache.invalidatePrefix(modulePrefix(exchange));
+                    }
+                });
+            }
+            String key = cacheKey(exchange);
+            Mono<Void> miss = Mono.defer(() -> {
+                exchange.getResponse().getHeaders().set(CACHE_STATUS_HEADER, "MISS");
+                return chain.filter(exchange.mutate().response(capturing(exchange, key, ttl)).build());
+            });
+            if (ResponseCache.bypassRequested(request)) {
+                return miss;
+            }
+            return responseCache.lookup(request, key)
+                    .flatMap(cached -> writeCached(exchange, cached))
+                    .switchIfEmpty(miss);
+        };
+    }
+
+    private ServerHttpResponse capturing(ServerWebExchange exchange, String key, Duration ttl) {
+        ServerHttpResponse response = exchange.getResponse();
+        return new CapturingResponseDecorator(response, responseCache.getMaxEntryBytes(),
+                candidate -> candidate.getStatusCode() == HttpStatus.OK
+                        && !candidate.getHeaders().containsKey(HttpHeaders.WARNING)
+                        && !isImage(candidate.getHeaders().getContentType()),
+                bytes -> responseCache.store(exchange.getRequest(), key, response.getHeaders(), bytes, ttl));
+    }
+
+    /**
+     * 圖片交給 {@code ImageCache} 的磁碟層，不佔用 heap 快取
+     */
+    private boolean isImage(MediaType contentType) {
+        return contentType != null && "image".equalsIgnoreCase(contentType.getType());
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, ResponseCache.CachedResponse cached) {
+        ServerWebExchangeUtils.setAlreadyRouted(exchange);
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().putAll(cached.headers());
+        response.getHeaders().set(HttpHeaders.AGE, String.valueOf(cached.ageSeconds()));
+        response.getHeaders().set(CACHE_STATUS_HEADER, "HIT");
+
+        String etag = cached.headers().getETag();
+        if (etag != null && exchange.getRequest().getHeaders().getIfNoneMatch().contains(etag)) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setContentLength(cached.body().length);
+        DataBuffer buffer = response.bufferFactory().wrap(cached.body());
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    /**
+     * 快取 key：使用客戶端原始 URL（RewritePath 之前）
+     */
+    static String cacheKey(ServerWebExchange exchange) {
+        URI uri = exchange.getRequest().getURI();
+        LinkedHashSet<URI> originalUrls = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR);
+        if (originalUrls != null && !originalUrls.isEmpty()) {
+            uri = originalUrls.iterator().next();
+        }
+        return "GET " + uri.getRawPath() + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+    }
+
+    /**
+     * 模組前綴：原始 URL 的前兩段路徑，例如 {@code GET /tymg/weapons}
+     */
+    static String modulePrefix(ServerWebExchange exchange) {
+        String key = cacheKey(exchange);
+        int slash = key.indexOf('/');
+        int first = key.indexOf('/', slash + 1);
+        int second = first < 0 ? -1 : key.indexOf('/', first + 1);
+        int end = second > 0 ? second : key.indexOf('?') > 0 ? key.indexOf('?') : key.length();
+        return key.substring(0, end);
+    }
+
+    /**
+     * 響應快取過濾器配置
+     */
+    public static class Config {
+
+        /** 響應沒有 max-age 時的 TTL（秒），0 表示使用全域預設值，負數表示不快取 */
+        private long ttlSeconds;
+
+        public long getTtlSeconds() {
+            return ttlSeconds;
+        }
+
+        public void setTtlSeconds(long ttlSeconds) {
+            this.ttlSeconds = ttlSeconds;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package tw.com.tymgateway.filter;
+
+import java.net.URI;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+
+import tw.com.tymgateway.service.StaleResponseStore;
+
+/**
+ * 記錄路由 GET 成功響應的過濾器
+ *
+ * <p>把最後一次成功的 GET 響應存入 {@link StaleResponseStore}，熔斷開啟時由
+ * {@code FallbackController} 以暫存資料回應。應放在 {@code CircuitBreaker} 過濾器之後，
+ * 確保只記錄真正來自後端的響應。</p>
+ *
+ * <pre>
+ * filters:
+ *   - StaleCache
+ * </pre>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+@Component
+public class StaleCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+    private final StaleResponseStore staleResponseStore;
+    private final int maxEntryBytes;
+
+    public StaleCacheGatewayFilterFactory(
+            StaleResponseStore staleResponseStore,
+            @Value("${gateway.stale-cache.max-entry-bytes:1048576}") int maxEntryBytes) {
+        this.staleResponseStore = staleResponseStore;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    @Override
+    public GatewayFilter apply(Object config) {
+        return (exchange, chain) -> {
+            if (exchange.getRequest().getMethod() != HttpMethod.GET) {
+                return chain.filter(exchange);
+            }
+            String key = StaleResponseStore.routeKey(exchange);
+            ServerHttpResponse response = exchange.getResponse();
+            CapturingResponseDecorator decorator = new CapturingResponseDecorator(response, maxEntryBytes,
+                    this::isFreshSuccess,
+                    bytes -> {
+                        URI backendUri = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+                        staleResponseStore.put(key, bytes, response.getHeaders(), backendUri,
+                                exchange.getRequest().getHeaders());
+                    });
+            return chain.filter(exchange.mutate().response(decorator).build());
+        };
+    }
+
+    private boolean isFreshSuccess(ServerHttpResponse response) {
+        return response.getStatusCode() != null
+                && response.getStatusCode().is2xxSuccessful()
+                && !response.getHeaders().containsKey(HttpHeaders.WARNING);
+    }
+}
@@ -0,0 +1,309 @@
+package tw.com.tymgateway.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import tw.com.tymgateway.config.BackendFailurePredicate;
+
+/**
+ * 後端自適應併發限制器
+ *
+ * <p>依後端路由群組（people、weapons、gallery、deckofcards）各自維護一個併發上限，
+ * 以量測到的 RTT 用 gradient 演算法調整：</p>
+ * <ul>
+ *   <li>RTT 接近基準（minRtt）時逐步放寬上限</li>
+ *   <li>RTT 上升超過容忍倍數時按比例收縮</li>
+ *   <li>逾時 / 失敗時以 backoff 比例直接收縮</li>
+ * </ul>
+ *
+ * <p>超過上限的請求會短暫排隊，排隊已滿或等待逾時則以 {@link LimitExceededException} 拒絕。</p>
+ */
+@Service
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    /** RTT 短期 EWMA 係數 */
+    private static final double RTT_EWMA_ALPHA = 0.1;
+
+    /** 每多少個樣本重設一次 minRtt 基準，讓基準可以往上調整 */
+    private static final int MIN_RTT_RESET_SAMPLES = 1000;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+
+    /** 量測 RTT 的時鐘（奈秒） */
+    private LongSupplier nanoClock = System::nanoTime;
+
+    @Value("${gateway.concurrency-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gateway.concurrency-limit.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${gateway.concurrency-limit.min-limit:4}")
+    private int minLimit;
+
+    @Value("${gateway.concurrency-limit.max-limit:200}")
+    private int maxLimit;
+
+    @Value("${gateway.concurrency-limit.rtt-tolerance:2.0}")
+    private double rttTolerance;
+
+    @Value("${gateway.concurrency-limit.smoothing:0.2}")
+    private double smoothing;
+
+    @Value("${gateway.concurrency-limit.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Value("${gateway.concurrency-limit.max-queue-size:50}")
+    private int maxQueueSize;
+
+    @Value("${gateway.concurrency-limit.max-queue-wait-ms:200}")
+    private long maxQueueWaitMs;
+
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在併發限制下執行呼叫；後端故障（5xx、逾時、連線錯誤，見 {@link BackendFailurePredicate}）
+     * 視為 drop 並收縮上限，4xx 等其他失敗只記錄 RTT
+     *
+     * @param group 路由群組
+     * @param call  實際的後端呼叫
+     * @return 呼叫結果；超過限制時為 {@link LimitExceededException}
+     */
+    public <T> Mono<T> execute(String group, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.usingWhen(acquire(group),
+                permit -> call.get(),
+                permit -> Mono.fromRunnable(() -> permit.release(false)),
+                (permit, error) -> Mono.fromRunnable(
+                        () -> permit.release(BackendFailurePredicate.isBackendFailure(error))),
+                permit -> Mono.fromRunnable(permit::abandon));
+    }
+
+    /**
+     * 取得一個執行許可；達上限時排隊等待，最多等待 {@code max-queue-wait-ms}
+     *
+     * @param group 路由群組
+     * @return 執行許可
+     */
+    public Mono<Permit> acquire(String group) {
+        Group target = groups.computeIfAbsent(group, this::createGroup);
+        return Mono.<Permit>create(sink -> target.acquire(sink))
+                .doOnDiscard(Permit.class, Permit::abandon)
+                .timeout(Duration.ofMillis(maxQueueWaitMs), Mono.error(() -> target.reject("queue wait timeout")));
+    }
+
+    private Group createGroup(String name) {
+        Group group = new Group(name);
+        Gauge.builder("gateway.concurrency.limit", group, g -> g.limit)
+                .tag("group", name)
+                .description("目前的自適應併發上限")
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.inflight", group, g -> g.inFlight)
+                .tag("group", name)
+                .description("進行中的後端請求數")
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.queued", group, g -> g.waiters.size())
+                .tag("group", name)
+                .description("等待併發許可的請求數")
+                .register(meterRegistry);
+        group.rejectedCounter = Counter.builder("gateway.concurrency.rejected")
+                .tag("group", name)
+                .description("超過併發上限被拒絕的請求數")
+                .register(meterRegistry);
+        return group;
+    }
+
+    /**
+     * 單一路由群組的併發狀態
+     */
+    private final class Group {
+
+        private final String name;
+        private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+        private double limit = initialLimit;
+        private int inFlight;
+        private double shortRttNanos;
+        private double minRttNanos = Double.MAX_VALUE;
+        private int samples;
+        private Counter rejectedCounter;
+
+        Group(String name) {
+            this.name = name;
+        }
+
+        void acquire(MonoSink<Permit> sink) {
+            if (tryAcquireSlot()) {
+                sink.success(new Permit(this));
+                return;
+            }
+            if (waiters.size() >= maxQueueSize) {
+                sink.error(reject("queue full"));
+                return;
+            }
+            Waiter waiter = new Waiter(sink);
+            waiters.add(waiter);
+            sink.onDispose(() -> {
+                if (waiter.claim()) {
+                    waiters.remove(waiter);
+                }
+            });
+            // 排入隊列的同時可能剛好有許可被釋放
+            drain();
+        }
+
+        long nanoTime() {
+            return nanoClock.getAsLong();
+        }
+
+        LimitExceededException reject(String reason) {
+            rejectedCounter.increment();
+            logger.debug("併發上限拒絕請求: group={}, reason={}, limit={}, inFlight={}", name, reason, (int) limit, inFlight);
+            return new LimitExceededException(name);
+        }
+
+        synchronized boolean tryAcquireSlot() {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void release(long rttNanos, boolean dropped) {
+            inFlight--;
+            if (rttNanos >= 0) {
+                update(rttNanos, dropped);
+            }
+        }
+
+        private void update(long rttNanos, boolean dropped) {
+            if (dropped) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                return;
+            }
+            // RTT 為 0 時 gradient 為 0/0，上限會變成 NaN
+            rttNanos = Math.max(1, rttNanos);
+            shortRttNanos = shortRttNanos == 0 ? rttNanos : RTT_EWMA_ALPHA * rttNanos + (1 - RTT_EWMA_ALPHA) * shortRttNanos;
+            minRttNanos = Math.min(minRttNanos, rttNanos);
+            if (++samples % MIN_RTT_RESET_SAMPLES == 0) {
+                minRttNanos = shortRttNanos;
+            }
+
+            double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * minRttNanos / shortRttNanos));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            // 沒有用到上限一半時不繼續放寬，避免上限在閒置時無限成長
+            if (newLimit > limit && inFlight < limit / 2) {
+                return;
+            }
+            newLimit = (1 - smoothing) * limit + smoothing * newLimit;
+            limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        }
+
+        void drain() {
+            while (!waiters.isEmpty() && tryAcquireSlot()) {
+                Waiter waiter = waiters.poll();
+                if (waiter == null) {
+                    release(-1, false);
+                    return;
+                }
+                if (waiter.claim()) {
+                    waiter.sink.success(new Permit(this));
+                } else {
+                    release(-1, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 排隊中的請求
+     */
+    private static final class Waiter {
+
+        private final MonoSink<Permit> sink;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * 併發執行許可，釋放時回報 RTT 與是否為 drop
+     */
+    public static final class Permit {
+
+        private final Group group;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Group group) {
+            this.group = group;
+            this.startNanos = group.nanoTime();
+        }
+
+        /**
+         * 釋放許可並以本次 RTT 調整上限
+         *
+         * @param dropped 是否為逾時 / 失敗 / 後端過載
+         */
+        public void release(boolean dropped) {
+            if (released.compareAndSet(false, true)) {
+                group.release(group.nanoTime() - startNanos, dropped);
+                group.drain();
+            }
+        }
+
+        /**
+         * 釋放許可但不計入 RTT 樣本（請求被取消）
+         */
+        public void abandon() {
+            if (released.compareAndSet(false, true)) {
+                group.release(-1, false);
+                group.drain();
+            }
+        }
+    }
+
+    /**
+     * 超過併發上限
+     */
+    public static class LimitExceededException extends RuntimeException {
+
+        public LimitExceededException(String group) {
+            super("Backend concurrency limit exceeded: " + group);
+        }
+    }
+}
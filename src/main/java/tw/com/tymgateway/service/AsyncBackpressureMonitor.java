@@ -0,0 +1,264 @@
+package tw.com.tymgateway.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import tw.com.tymgateway.dto.AsyncResultMessage;
+
+/**
+ * 異步結果背壓監控器
+ *
+ * <p>追蹤 Consumer 處理落後的程度，讓 Gateway 在後端塞車時提早拒絕或延後新的寫入請求，
+ * 而不是讓所有請求一起等到 {@code gateway.async.timeout} 超時。</p>
+ *
+ * <p>判斷依據：</p>
+ * <ul>
+ *   <li>異步結果送達延遲（收到時間 - 結果訊息的 timestamp），以 EWMA 平滑</li>
+ *   <li>{@code tymb-exchange} 工作隊列的訊息堆積數（有設定隊列名稱時才會查詢）</li>
+ * </ul>
+ */
+@Service
+public class AsyncBackpressureMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncBackpressureMonitor.class);
+
+    /** EWMA 平滑係數 */
+    private static final double LAG_EWMA_ALPHA = 0.2;
+
+    /**
+     * 背壓等級
+     */
+    public enum Level {
+        /** 正常接受請求 */
+        NORMAL,
+        /** 延後送出新的寫入請求 */
+        DEFER,
+        /** 直接拒絕新的寫入請求 */
+        REJECT
+    }
+
+    private final AmqpAdmin amqpAdmin;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${gateway.async.backpressure.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gateway.async.backpressure.sample-interval-seconds:5}")
+    private long sampleIntervalSeconds;
+
+    @Value("${gateway.async.backpressure.lag-defer-threshold-ms:5000}")
+    private long lagDeferThresholdMs;
+
+    @Value("${gateway.async.backpressure.lag-reject-threshold-ms:30000}")
+    private long lagRejectThresholdMs;
+
+    @Value("${gateway.async.backpressure.queue-defer-threshold:500}")
+    private long queueDeferThreshold;
+
+    @Value("${gateway.async.backpressure.queue-reject-threshold:2000}")
+    private long queueRejectThreshold;
+
+    @Value("${gateway.async.backpressure.defer-delay-ms:500}")
+    private long deferDelayMs;
+
+    @Value("${gateway.async.backpressure.monitored-queues:}")
+    private String monitoredQueues;
+
+    private final AtomicLong lagEwmaMs = new AtomicLong();
+    private final AtomicLong resultsSinceLastSample = new AtomicLong();
+    private final AtomicLong queueDepth = new AtomicLong(-1);
+    private final AtomicReference<Level> level = new AtomicReference<>(Level.NORMAL);
+
+    private Counter rejectedCounter;
+    private Counter deferredCounter;
+    private List<String> queueNames = List.of();
+
+    private final ScheduledExecutorService sampler =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "async-backpressure-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    public AsyncBackpressureMonitor(AmqpAdmin amqpAdmin, MeterRegistry meterRegistry) {
+        this.amqpAdmin = amqpAdmin;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        queueNames = Arrays.stream(monitoredQueues.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .toList();
+
+        Gauge.builder("gateway.async.backpressure.lag", lagEwmaMs, AtomicLong::get)
+                .description("異步結果送達延遲 (EWMA, ms)")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("gateway.async.backpressure.queue.depth", queueDepth, AtomicLong::get)
+                .description("監控中工作隊列的訊息堆積總數，-1 表示無法取得")
+                .register(meterRegistry);
+        Gauge.builder("gateway.async.backpressure.level", level, ref -> ref.get().ordinal())
+                .description("背壓等級：0=NORMAL, 1=DEFER, 2=REJECT")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("gateway.async.backpressure.rejected")
+                .description("因背壓被拒絕的寫入請求數")
+                .register(meterRegistry);
+        deferredCounter = Counter.builder("gateway.async.backpressure.deferred")
+                .description("因背壓被延後送出的寫入請求數")
+                .register(meterRegistry);
+
+        if (enabled) {
+            sampler.scheduleWithFixedDelay(this::sample, sampleIntervalSeconds, sampleIntervalSeconds,
+                    TimeUnit.SECONDS);
+            logger.info("異步背壓監控已啟動: queues={}, interval={}s", queueNames, sampleIntervalSeconds);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * 記錄一筆異步結果的送達延遲
+     *
+     * @param resultMessage Consumer 回傳的異步結果
+     */
+    public void recordResult(AsyncResultMessage resultMessage) {
+        resultsSinceLastSample.incrementAndGet();
+        Instant producedAt = parseTimestamp(resultMessage.getTimestamp());
+        if (producedAt == null) {
+            return;
+        }
+        long lagMs = Math.max(0, System.currentTimeMillis() - producedAt.toEpochMilli());
+        lagEwmaMs.updateAndGet(previous -> previous == 0
+                ? lagMs
+                : (long) (LAG_EWMA_ALPHA * lagMs + (1 - LAG_EWMA_ALPHA) * previous));
+    }
+
+    /**
+     * 取得目前的背壓等級
+     */
+    public Level currentLevel() {
+        return enabled ? level.get() : Level.NORMAL;
+    }
+
+    /**
+     * DEFER 等級時寫入請求延後送出的時間
+     */
+    public Duration deferDelay() {
+        return Duration.ofMillis(deferDelayMs);
+    }
+
+    /**
+     * REJECT 等級時建議客戶端重試的秒數（即下一次取樣的時間）
+     */
+    public long retryAfterSeconds() {
+        return sampleIntervalSeconds;
+    }
+
+    public void recordRejected() {
+        rejectedCounter.increment();
+    }
+
+    public void recordDeferred() {
+        deferredCounter.increment();
+    }
+
+    private void sample() {
+        try {
+            // 沒有新結果進來時讓延遲逐步衰減，避免一次尖峰後永遠停在拒絕狀態
+            if (resultsSinceLastSample.getAndSet(0) == 0) {
+                lagEwmaMs.updateAndGet(previous -> previous / 2);
+            }
+            queueDepth.set(sampleQueueDepth());
+
+            Level next = evaluate(lagEwmaMs.get(), queueDepth.get());
+            Level previous = level.getAndSet(next);
+            if (previous != next) {
+                logger.warn("異步背壓等級變更: {} -> {} (lag={}ms, queueDepth={})",
+                        previous, next, lagEwmaMs.get(), queueDepth.get());
+            }
+        } catch (Exception e) {
+            logger.warn("異步背壓取樣失敗: {}", e.getMessage());
+        }
+    }
+
+    private long sampleQueueDepth() {
+        if (queueNames.isEmpty()) {
+            return -1;
+        }
+        long total = 0;
+        boolean available = false;
+        for (String queueName : queueNames) {
+            try {
+                QueueInformation info = amqpAdmin.getQueueInfo(queueName);
+                if (info != null) {
+                    total += info.getMessageCount();
+                    available = true;
+                }
+            } catch (Exception e) {
+                logger.debug("無法取得隊列深度: queue={}, error={}", queueName, e.getMessage());
+            }
+        }
+        return available ? total : -1;
+    }
+
+    private Level evaluate(long lagMs, long depth) {
+        if (lagMs >= lagRejectThresholdMs || (depth >= 0 && depth >= queueRejectThreshold)) {
+            return Level.REJECT;
+        }
+        if (lagMs >= lagDeferThresholdMs || (depth >= 0 && depth >= queueDeferThreshold)) {
+            return Level.DEFER;
+        }
+        return Level.NORMAL;
+    }
+
+    /**
+     * 解析 Consumer 的 timestamp，支援 ISO Instant、ISO LocalDateTime 與 epoch 毫秒
+     */
+    private Instant parseTimestamp(String timestamp) {
+        if (timestamp == null || timestamp.isBlank()) {
+            return null;
+        }
+        try {
+            return Instant.parse(timestamp);
+        } catch (DateTimeParseException ignored) {
+            // try next format
+        }
+        try {
+            return LocalDateTime.parse(timestamp).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException ignored) {
+            // try next format
+        }
+        try {
+            return Instant.ofEpochMilli(Long.parseLong(timestamp.trim()));
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
+}
@@ -7,6 +7,10 @@ import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import tw.com.tymgateway.config.RabbitMQConfig;
 import tw.com.tymgateway.dto.AsyncResultMessage;
 
@@ -27,6 +31,21 @@ public class AsyncResultListener {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private AsyncBackpressureMonitor asyncBackpressureMonitor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter lateResultCounter;
+
+    @PostConstruct
+    public void init() {
+        lateResultCounter = Counter.builder("gateway.async.results.late")
+                .description("在請求截止時間之後才送達的異步結果數（Consumer 浪費的處理）")
+                .register(meterRegistry);
+    }
+
     /**
      * 監聽異步結果隊列
      *
@@ -41,12 +60,17 @@ public class AsyncResultListener {
         try {
             AsyncResultMessage resultMessage = objectMapper.readValue(body, AsyncResultMessage.class);
 
-            logger.info("📥 Gateway 收到異步結果: requestId={}, status={}, source={}",
+            logger.debug("📥 Gateway 收到異步結果: requestId={}, status={}, source={}",
                     resultMessage.getRequestId(), resultMessage.getStatus(), resultMessage.getSource());
 
+            asyncBackpressureMonitor.recordResult(resultMessage);
+            if (asyncResultRegistry.isPastDeadline(resultMessage.getRequestId())) {
+                lateResultCounter.increment();
+                logger.warn("⏰ 異步結果在截止時間之後才送達: requestId={}", resultMessage.getRequestId());
+            }
             asyncResultRegistry.complete(resultMessage);
 
-            logger.info("✅ 已發送異步結果到註冊中心: requestId={}, status={}",
+            logger.debug("✅ 已發送異步結果到註冊中心: requestId={}, status={}",
                     resultMessage.getRequestId(), resultMessage.getStatus());
 
         } catch (Exception e) {
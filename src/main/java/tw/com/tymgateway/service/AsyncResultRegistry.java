@@ -1,13 +1,13 @@
 package tw.com.tymgateway.service;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -30,15 +30,46 @@ public class AsyncResultRegistry {
     private final Map<String, CompletableFuture<AsyncResultMessage>> pendingRequests = new ConcurrentHashMap<>();
     private final Map<String, AsyncResultMessage> completedResults = new ConcurrentHashMap<>();
     private final Map<String, ScheduledFuture<?>> cleanupTasks = new ConcurrentHashMap<>();
+    private final Map<String, TrackedDeadline> deadlines = new ConcurrentHashMap<>();
 
-    private final ScheduledExecutorService cleanupScheduler =
-        Executors.newSingleThreadScheduledExecutor(r -> {
+    /**
+     * 請求截止時間與其清除工作（結果送達時一併取消）
+     */
+    private record TrackedDeadline(Instant deadline, ScheduledFuture<?> cleanupTask) {
+    }
+
+    /** 截止時間記錄保留時間（與 async-result 隊列 TTL 一致） */
+    private static final Duration DEADLINE_RETENTION = Duration.ofMinutes(5);
+
+    private final ScheduledThreadPoolExecutor cleanupScheduler = createCleanupScheduler();
+
+    /**
+     * 取消的清除工作立即移出排程隊列，避免每個請求的工作累積到延遲時間結束
+     */
+    private static ScheduledThreadPoolExecutor createCleanupScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
             Thread thread = new Thread(r, "async-result-cleanup");
             thread.setDaemon(true);
             return thread;
         });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
 
     public Mono<AsyncResultMessage> awaitResult(String requestId, Duration timeout) {
+        return awaitResult(requestId, timeout, null);
+    }
+
+    /**
+     * 等待異步結果，並記錄該請求的截止時間
+     *
+     * <p>截止時間用於判斷結果是否在呼叫端放棄之後才送達（浪費的處理）。</p>
+     *
+     * @param requestId 請求 ID
+     * @param timeout   等待時間
+     * @param deadline  請求截止時間（可為 null）
+     */
+    public Mono<AsyncResultMessage> awaitResult(String requestId, Duration timeout, Instant deadline) {
         Objects.requireNonNull(requestId, "requestId must not be null");
 
         AsyncResultMessage completed = completedResults.remove(requestId);
@@ -47,6 +78,10 @@ public class AsyncResultRegistry {
             return Mono.just(completed);
         }
 
+        if (deadline != null) {
+            trackDeadline(requestId, deadline);
+        }
+
         CompletableFuture<AsyncResultMessage> future = new CompletableFuture<>();
         CompletableFuture<AsyncResultMessage> existing = pendingRequests.putIfAbsent(requestId, future);
         CompletableFuture<AsyncResultMessage> targetFuture = existing != null ? existing : future;
@@ -82,6 +117,38 @@ public class AsyncResultRegistry {
         }
     }
 
+    /**
+     * 判斷結果是否在請求截止時間之後才送達
+     *
+     * <p>呼叫後會移除該請求的截止時間記錄。</p>
+     *
+     * @param requestId 請求 ID
+     * @return 已超過截止時間則為 true
+     */
+    public boolean isPastDeadline(String requestId) {
+        if (requestId == null) {
+            return false;
+        }
+        TrackedDeadline tracked = deadlines.remove(requestId);
+        if (tracked == null) {
+            return false;
+        }
+        tracked.cleanupTask().cancel(false);
+        return Instant.now().isAfter(tracked.deadline());
+    }
+
+    private void trackDeadline(String requestId, Instant deadline) {
+        // 結果一直沒回來時，於 Consumer 隊列 TTL 過後清除記錄
+        long delayMillis = Math.max(0, Duration.between(Instant.now(), deadline).toMillis())
+                + DEADLINE_RETENTION.toMillis();
+        ScheduledFuture<?> cleanupTask = cleanupScheduler.schedule(
+                () -> deadlines.remove(requestId), delayMillis, TimeUnit.MILLISECONDS);
+        TrackedDeadline previous = deadlines.put(requestId, new TrackedDeadline(deadline, cleanupTask));
+        if (previous != null) {
+            previous.cleanupTask().cancel(false);
+        }
+    }
+
     private void cancelCleanupTask(String requestId) {
         ScheduledFuture<?> task = cleanupTasks.remove(requestId);
         if (task != null) {
@@ -0,0 +1,343 @@
+package tw.com.tymgateway.service;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 後端實例選擇器（客戶端負載平衡）
+ *
+ * <p>後端實例來源：</p>
+ * <ul>
+ *   <li>{@code gateway.backend.instances}：固定的實例清單（逗號分隔的 base URL）</li>
+ *   <li>{@code gateway.backend.dns-name}：設定時定期解析 DNS（例如 Kubernetes headless service），
+ *       每個 A 記錄視為一個實例</li>
+ * </ul>
+ *
+ * <p>選擇方式為 power-of-two-choices：隨機取兩個可用實例，比較「延遲 EWMA ×（進行中請求數 + 1）」
+ * 選較低者。連續失敗達門檻的實例會被暫時剔除（passive outlier ejection），剔除時間隨次數遞增，
+ * 同時剔除的實例數不超過 {@code max-ejection-percent}。</p>
+ */
+@Service
+public class BackendInstanceSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendInstanceSelector.class);
+
+    /** 延遲 EWMA 係數 */
+    private static final double LATENCY_EWMA_ALPHA = 0.3;
+
+    /** 尚無延遲樣本時的預設值（1ms），讓新實例有機會被選到 */
+    private static final double DEFAULT_LATENCY_NANOS = 1_000_000;
+
+    /** 剔除時間倍數的上限 */
+    private static final int MAX_EJECTION_MULTIPLIER = 5;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${gateway.backend.instances:${BACKEND_BASE_URL:http://localhost:8080}}")
+    private String staticInstances;
+
+    @Value("${gateway.backend.dns-name:}")
+    private String dnsName;
+
+    @Value("${gateway.backend.dns-scheme:http}")
+    private String dnsScheme;
+
+    @Value("${gateway.backend.dns-port:8080}")
+    private int dnsPort;
+
+    @Value("${gateway.backend.dns-refresh-seconds:30}")
+    private long dnsRefreshSeconds;
+
+    @Value("${gateway.backend.outlier.consecutive-failures:5}")
+    private int consecutiveFailureThreshold;
+
+    @Value("${gateway.backend.outlier.base-ejection-seconds:30}")
+    private long baseEjectionSeconds;
+
+    @Value("${gateway.backend.outlier.max-ejection-percent:50}")
+    private int maxEjectionPercent;
+
+    private volatile List<Instance> instances = List.of();
+    private final Map<URI, Instance> known = new ConcurrentHashMap<>();
+
+    private Counter ejectionCounter;
+
+    private final ScheduledExecutorService resolver =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "backend-dns-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    public BackendInstanceSelector(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        ejectionCounter = Counter.builder("gateway.backend.instance.ejections")
+                .description("後端實例因連續失敗被剔除的次數")
+                .register(meterRegistry);
+        Gauge.builder("gateway.backend.instances.available", this, selector -> selector.availableCount())
+                .description("目前可用（未被剔除）的後端實例數")
+                .register(meterRegistry);
+
+        if (dnsName.isBlank()) {
+            List<URI> uris = Arrays.stream(staticInstances.split(","))
+                    .map(String::trim)
+                    .filter(value -> !value.isEmpty())
+                    .map(URI::create)
+                    .toList();
+            updateInstances(uris);
+            logger.info("後端實例（固定清單）: {}", uris);
+        } else {
+            refreshDns();
+            resolver.scheduleWithFixedDelay(this::refreshDns, dnsRefreshSeconds, dnsRefreshSeconds, TimeUnit.SECONDS);
+            logger.info("後端實例（DNS）: name={}, refresh={}s", dnsName, dnsRefreshSeconds);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        resolver.shutdownNow();
+    }
+
+    /**
+     * 選擇一個後端實例
+     *
+     * @return 實例；沒有任何實例時為 empty
+     */
+    public Optional<Instance> choose() {
+        return choose(null);
+    }
+
+    /**
+     * 選擇一個後端實例，盡量避開指定的實例（例如 hedged request 的第二個請求）
+     *
+     * @param avoid 要避開的實例，可為 null
+     * @return 實例；沒有任何實例時為 empty
+     */
+    public Optional<Instance> choose(Instance avoid) {
+        List<Instance> current = instances;
+        if (current.isEmpty()) {
+            return Optional.empty();
+        }
+        long now = System.nanoTime();
+        List<Instance> candidates = new ArrayList<>(current.size());
+        for (Instance instance : current) {
+            if (!instance.isEjected(now) && instance != avoid) {
+                candidates.add(instance);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // 全部被剔除或只剩要避開的實例時，退回所有實例，寧可嘗試也不要直接失敗
+            candidates = current;
+        }
+        if (candidates.size() == 1) {
+            return Optional.of(candidates.get(0));
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Instance a = candidates.get(first);
+        Instance b = candidates.get(second);
+        return Optional.of(a.score() <= b.score() ? a : b);
+    }
+
+    /**
+     * 目前所有實例的 base URL（包含被剔除的實例）
+     */
+    public List<URI> getInstanceUris() {
+        return instances.stream().map(Instance::getBaseUri).toList();
+    }
+
+    private long availableCount() {
+        long now = System.nanoTime();
+        return instances.stream().filter(instance -> !instance.isEjected(now)).count();
+    }
+
+    private void refreshDns() {
+        try {
+            InetAddress[] addresses = InetAddress.getAllByName(dnsName);
+            List<URI> uris = Arrays.stream(addresses)
+                    .map(address -> URI.create(dnsScheme + "://" + address.getHostAddress() + ":" + dnsPort))
+                    .distinct()
+                    .toList();
+            updateInstances(uris);
+        } catch (UnknownHostException e) {
+            // 解析失敗時保留上一次的清單
+            logger.warn("後端 DNS 解析失敗，沿用現有實例清單: name={}, error={}", dnsName, e.getMessage());
+        } catch (Exception e) {
+            logger.warn("後端 DNS 更新失敗: {}", e.getMessage());
+        }
+    }
+
+    private void updateInstances(List<URI> uris) {
+        Map<URI, Instance> next = new LinkedHashMap<>();
+        for (URI uri : uris) {
+            // 保留既有實例的統計資料，DNS 重新解析時不會重置延遲與剔除狀態
+            next.put(uri, known.computeIfAbsent(uri, this::createInstance));
+        }
+        known.values().removeIf(instance -> {
+            if (next.containsKey(instance.getBaseUri())) {
+                return false;
+            }
+            // 實例離開後移除其指標，Pod IP 變動時不會一直累積；之後同一個位址重新出現會註冊新的指標
+            instance.meters.forEach(meterRegistry::remove);
+            return true;
+        });
+        List<Instance> previous = instances;
+        instances = List.copyOf(next.values());
+        if (!previous.equals(instances)) {
+            logger.info("後端實例清單更新: {}", next.keySet());
+        }
+    }
+
+    private Instance createInstance(URI uri) {
+        Instance instance = new Instance(uri);
+        // 強參照：實例存活期間由 known 持有，離開時在 updateInstances 移除
+        instance.meters.add(Gauge.builder("gateway.backend.instance.inflight", instance, i -> i.inFlight.get())
+                .tag("instance", uri.getAuthority())
+                .description("後端實例進行中的請求數")
+                .strongReference(true)
+                .register(meterRegistry));
+        instance.meters.add(Gauge.builder("gateway.backend.instance.latency", instance, i -> i.latencyEwmaNanos / 1_000_000)
+                .tag("instance", uri.getAuthority())
+                .description("後端實例延遲 EWMA (ms)")
+                .baseUnit("milliseconds")
+                .strongReference(true)
+                .register(meterRegistry));
+        return instance;
+    }
+
+    private int ejectedCount(long now) {
+        int count = 0;
+        for (Instance instance : instances) {
+            if (instance.isEjected(now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 單一後端實例與其負載統計
+     */
+    public final class Instance {
+
+        private final URI baseUri;
+        private final List<Meter> meters = new ArrayList<>(2);
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile double latencyEwmaNanos;
+        private volatile long ejectedUntilNanos;
+        private volatile int ejections;
+
+        private Instance(URI baseUri) {
+            this.baseUri = baseUri;
+        }
+
+        public URI getBaseUri() {
+            return baseUri;
+        }
+
+        /**
+         * 開始一個請求
+         *
+         * @return 開始時間（nanoTime），結束時傳給 {@link #end}
+         */
+        public long begin() {
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        /**
+         * 結束一個請求並更新延遲與失敗統計
+         *
+         * @param startNanos {@link #begin} 的回傳值
+         * @param success    是否成功（連線錯誤、逾時、5xx 視為失敗）
+         */
+        public void end(long startNanos, boolean success) {
+            inFlight.decrementAndGet();
+            long now = System.nanoTime();
+            double sample = now - startNanos;
+            double previous = latencyEwmaNanos;
+            latencyEwmaNanos = previous == 0 ? sample : LATENCY_EWMA_ALPHA * sample + (1 - LATENCY_EWMA_ALPHA) * previous;
+
+            if (success) {
+                consecutiveFailures.set(0);
+                if (ejections != 0 && !isEjected(now)) {
+                    ejections = 0;
+                }
+                return;
+            }
+            if (consecutiveFailures.incrementAndGet() >= consecutiveFailureThreshold) {
+                eject(now);
+            }
+        }
+
+        /**
+         * 放棄請求（被取消），只釋放進行中計數
+         */
+        public void cancel() {
+            inFlight.decrementAndGet();
+        }
+
+        private synchronized void eject(long now) {
+            if (isEjected(now)) {
+                return;
+            }
+            int maxEjected = Math.max(1, instances.size() * maxEjectionPercent / 100);
+            if (ejectedCount(now) >= maxEjected) {
+                return;
+            }
+            ejections = Math.min(ejections + 1, MAX_EJECTION_MULTIPLIER);
+            ejectedUntilNanos = now + TimeUnit.SECONDS.toNanos(baseEjectionSeconds * ejections);
+            consecutiveFailures.set(0);
+            ejectionCounter.increment();
+            logger.warn("後端實例連續失敗，暫時剔除: instance={}, seconds={}", baseUri, baseEjectionSeconds * ejections);
+        }
+
+        private boolean isEjected(long now) {
+            return ejectedUntilNanos != 0 && now - ejectedUntilNanos < 0;
+        }
+
+        private double score() {
+            double latency = latencyEwmaNanos == 0 ? DEFAULT_LATENCY_NANOS : latencyEwmaNanos;
+            return latency * (inFlight.get() + 1);
+        }
+
+        @Override
+        public String toString() {
+            return baseUri.toString();
+        }
+    }
+}
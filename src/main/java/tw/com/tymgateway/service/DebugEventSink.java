@@ -0,0 +1,231 @@
+package tw.com.tymgateway.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 結構化除錯事件輸出（JSON lines）
+ *
+ * <p>呼叫端（通常在 Netty event loop 上）只把事件放進固定大小的無鎖 ring buffer，
+ * 由背景執行緒批次寫入 {@code gateway.debug-events.file}；buffer 滿時直接丟棄並計入
+ * {@code gateway.debug.events.dropped}。事件資料以 {@link Supplier} 傳入，
+ * JSON 字串在背景執行緒才組合。</p>
+ *
+ * <p>預設停用，停用時 {@link #record} 只有一次 boolean 判斷。</p>
+ */
+@Service
+public class DebugEventSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(DebugEventSink.class);
+
+    private record Event(String hypothesisId, String location, String message, Supplier<String> data,
+            long timestamp) {
+    }
+
+    @Value("${gateway.debug-events.enabled:false}")
+    private boolean enabled;
+
+    @Value("${gateway.debug-events.file:.cursor/debug.log}")
+    private String file;
+
+    @Value("${gateway.debug-events.buffer-size:1024}")
+    private int bufferSize;
+
+    @Value("${gateway.debug-events.max-batch:256}")
+    private int maxBatch;
+
+    @Value("${gateway.debug-events.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    private final MeterRegistry meterRegistry;
+
+    private RingBuffer<Event> buffer;
+    private Counter dropped;
+    private Thread writer;
+    private volatile boolean running;
+
+    public DebugEventSink(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        buffer = new RingBuffer<>(bufferSize);
+        dropped = Counter.builder("gateway.debug.events.dropped")
+                .description("除錯事件 buffer 已滿而丟棄的事件數")
+                .register(meterRegistry);
+        running = true;
+        writer = new Thread(this::drainLoop, "debug-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("除錯事件輸出已啟用: file={}, bufferSize={}", file, buffer.capacity());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 記錄一筆除錯事件（不阻塞）
+     *
+     * @param hypothesisId 假設 / 追蹤代號
+     * @param location     程式位置
+     * @param message      事件名稱
+     * @param dataJson     事件資料（JSON 物件字串），在背景執行緒才呼叫
+     */
+    public void record(String hypothesisId, String location, String message, Supplier<String> dataJson) {
+        if (!enabled) {
+            return;
+        }
+        if (!buffer.offer(new Event(hypothesisId, location, message, dataJson, System.currentTimeMillis()))) {
+            dropped.increment();
+        }
+    }
+
+    private void drainLoop() {
+        Path path = Path.of(file);
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        } catch (IOException e) {
+            logger.warn("無法建立除錯事件目錄: {}", e.getMessage());
+        }
+        StringBuilder batch = new StringBuilder(8 * 1024);
+        while (running) {
+            int count = 0;
+            Event event;
+            while (count < maxBatch && (event = buffer.poll()) != null) {
+                append(batch, event);
+                count++;
+            }
+            if (count == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+                continue;
+            }
+            try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.append(batch);
+            } catch (IOException e) {
+                logger.warn("除錯事件寫入失敗（略過 {} 筆）: {}", count, e.getMessage());
+            }
+            batch.setLength(0);
+        }
+    }
+
+    private static void append(StringBuilder batch, Event event) {
+        String data;
+        try {
+            data = event.data() != null ? event.data().get() : "null";
+        } catch (RuntimeException e) {
+            data = "null";
+        }
+        batch.append("{\"sessionId\":\"debug-session\",\"runId\":\"run1\",\"hypothesisId\":\"")
+                .append(event.hypothesisId())
+                .append("\",\"location\":\"").append(event.location())
+                .append("\",\"message\":\"").append(event.message())
+                .append("\",\"data\":").append(data)
+                .append(",\"timestamp\":").append(event.timestamp())
+                .append("}\n");
+    }
+
+    /**
+     * 固定大小的多生產者、單消費者無鎖 ring buffer（每格以序號判斷可寫 / 可讀）
+     */
+    static final class RingBuffer<E> {
+
+        private final AtomicReferenceArray<E> slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private long head;
+
+        RingBuffer(int requestedCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        /**
+         * 放入一個元素（任意執行緒）
+         *
+         * @return buffer 已滿時為 false
+         */
+        boolean offer(E element) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) (position & mask);
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.set(index, element);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                    position = tail.get();
+                } else if (difference < 0) {
+                    return false;
+                } else {
+                    position = tail.get();
+                }
+            }
+        }
+
+        /**
+         * 取出一個元素（只能由單一消費者執行緒呼叫）
+         *
+         * @return 沒有可讀元素時為 null
+         */
+        E poll() {
+            int index = (int) (head & mask);
+            if (sequences.get(index) - (head + 1) < 0) {
+                return null;
+            }
+            E element = slots.get(index);
+            slots.set(index, null);
+            sequences.set(index, head + mask + 1);
+            head++;
+            return element;
+        }
+    }
+}
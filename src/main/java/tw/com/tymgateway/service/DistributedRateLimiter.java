@@ -0,0 +1,371 @@
+package tw.com.tymgateway.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 請求限流（token bucket，依使用者或客戶端 IP）
+ *
+ * <p>限流規則以路徑與 HTTP 方法設定於 {@code gateway.rate-limit.routes}（先符合者優先）。
+ * 每個（規則, 使用者 / IP）各有一個本地 token bucket，請求只在本機判斷，不等待 Redis：</p>
+ * <ul>
+ *   <li>啟用 {@code redis-sync} 時，背景執行緒每 {@code sync-interval-ms} 把本機的用量累加到
+ *       Redis 計數器，並從計數器的增加量扣掉其他副本的用量，讓多個副本合計接近同一個上限</li>
+ *   <li>Redis 失敗或逾時只影響同步，連續失敗時暫停同步 {@code cooldown-seconds}，本地限流照常運作</li>
+ *   <li>本地 bucket 以筆數限制（{@code max-keys}），閒置 {@code idle-seconds} 後移除</li>
+ * </ul>
+ *
+ * <p>指標：{@code gateway.ratelimit.requests}（tag: route、result）、
+ * {@code gateway.ratelimit.sync}（tag: result）、{@code gateway.ratelimit.buckets}。</p>
+ */
+@Service
+public class DistributedRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedRateLimiter.class);
+
+    private static final String KEY_PREFIX = "tymg:ratelimit:";
+
+    /** 連續失敗多少次後暫停同步 */
+    private static final int FAILURE_THRESHOLD = 3;
+
+    /** 累加用量並延長存活時間，回傳所有副本的累計用量 */
+    private static final RedisScript<Long> SYNC_SCRIPT = RedisScript.of(
+            "local total = redis.call('INCRBY', KEYS[1], ARGV[1]) "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[2]) "
+                    + "return total",
+            Long.class);
+
+    /**
+     * 單一路由的限流設定（{@code gateway.rate-limit.routes[*]}）
+     *
+     * @param id                 規則名稱（指標 tag 與 Redis key 使用）
+     * @param path               路徑樣式，例如 {@code /tymg/weapons/**}
+     * @param methods            適用的 HTTP 方法，未設定時為全部
+     * @param replenishPerSecond 每秒補充的 token 數
+     * @param burst              bucket 容量
+     */
+    public record RouteLimit(String id, String path, List<String> methods, double replenishPerSecond, int burst) {
+    }
+
+    /**
+     * 限流判斷結果
+     *
+     * @param allowed           是否放行
+     * @param retryAfterSeconds 被拒絕時建議的重試秒數
+     */
+    public record Decision(boolean allowed, long retryAfterSeconds) {
+
+        static final Decision ALLOWED = new Decision(true, 0);
+    }
+
+    private record Rule(RouteLimit limit, PathPattern pattern, Set<HttpMethod> methods, Counter allowed,
+            Counter rejected) {
+
+        boolean matches(HttpMethod method, PathContainer path) {
+            return (methods.isEmpty() || methods.contains(method)) && pattern.matches(path);
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final boolean redisSync;
+
+    @Value("${gateway.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gateway.rate-limit.sync-interval-ms:1000}")
+    private long syncIntervalMs;
+
+    @Value("${gateway.rate-limit.redis-timeout-ms:200}")
+    private long redisTimeoutMs;
+
+    @Value("${gateway.rate-limit.cooldown-seconds:30}")
+    private long cooldownSeconds;
+
+    @Value("${gateway.rate-limit.max-keys:100000}")
+    private long maxKeys;
+
+    @Value("${gateway.rate-limit.idle-seconds:300}")
+    private long idleSeconds;
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final Set<String> dirtyKeys = ConcurrentHashMap.newKeySet();
+
+    private Cache<String, Bucket> buckets;
+    private Counter syncSuccess;
+    private Counter syncFailure;
+    private volatile int consecutiveFailures;
+    private volatile long suspendedUntilMillis;
+
+    private final ScheduledExecutorService synchronizer =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rate-limit-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    public DistributedRateLimiter(
+            ObjectProvider<ReactiveRedisConnectionFactory> connectionFactory,
+            MeterRegistry meterRegistry,
+            Environment environment,
+            @Value("${gateway.rate-limit.redis-sync:false}") boolean redisSync) {
+        ReactiveRedisConnectionFactory factory = connectionFactory.getIfAvailable();
+        this.redisSync = redisSync && factory != null;
+        this.redisTemplate = this.redisSync ? new ReactiveStringRedisTemplate(factory) : null;
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        List<RouteLimit> limits = Binder.get(environment)
+                .bind("gateway.rate-limit.routes", Bindable.listOf(RouteLimit.class))
+                .orElse(List.of());
+        for (RouteLimit limit : limits) {
+            if (limit.id() == null || limit.id().contains(":") || limit.path() == null
+                    || limit.replenishPerSecond() <= 0 || limit.burst() <= 0) {
+                throw new IllegalStateException("限流規則設定不完整: " + limit);
+            }
+            Set<HttpMethod> methods = limit.methods() == null
+                    ? Set.of()
+                    : limit.methods().stream()
+                            .map(method -> HttpMethod.valueOf(method.trim().toUpperCase(Locale.ROOT)))
+                            .collect(Collectors.toUnmodifiableSet());
+            rules.add(new Rule(limit, PathPatternParser.defaultInstance.parse(limit.path()), methods,
+                    requestCounter(limit.id(), "allowed"), requestCounter(limit.id(), "rejected")));
+        }
+
+        buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofSeconds(idleSeconds))
+                .build();
+        Gauge.builder("gateway.ratelimit.buckets", this, limiter -> limiter.buckets.estimatedSize())
+                .description("目前追蹤中的限流 bucket 數")
+                .register(meterRegistry);
+        syncSuccess = Counter.builder("gateway.ratelimit.sync").tag("result", "success")
+                .description("限流用量同步到 Redis 的次數").register(meterRegistry);
+        syncFailure = Counter.builder("gateway.ratelimit.sync").tag("result", "failure")
+                .description("限流用量同步到 Redis 的次數").register(meterRegistry);
+
+        if (redisSync) {
+            synchronizer.scheduleWithFixedDelay(this::sync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        logger.info("請求限流已啟用: rules={}, redisSync={}", rules.size(), redisSync);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronizer.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled && !rules.isEmpty();
+    }
+
+    /**
+     * 找出請求適用的限流規則
+     *
+     * @return 規則 id；沒有規則符合時為 null
+     */
+    public String match(HttpMethod method, PathContainer path) {
+        for (Rule rule : rules) {
+            if (rule.matches(method, path)) {
+                return rule.limit().id();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 從本地 bucket 取一個 token
+     *
+     * @param routeId   {@link #match} 回傳的規則 id
+     * @param clientKey 使用者或客戶端 IP
+     */
+    public Decision tryAcquire(String routeId, String clientKey) {
+        Rule rule = rule(routeId);
+        if (rule == null) {
+            return Decision.ALLOWED;
+        }
+        RouteLimit limit = rule.limit();
+        String key = routeId + ':' + clientKey;
+        long nowNanos = System.nanoTime();
+        Bucket bucket = buckets.get(key, ignored -> new Bucket(limit.burst(), nowNanos));
+        Decision decision = bucket.tryConsume(limit.replenishPerSecond(), limit.burst(), nowNanos);
+        if (redisSync && bucket.markDirty()) {
+            dirtyKeys.add(key);
+        }
+        (decision.allowed() ? rule.allowed() : rule.rejected()).increment();
+        return decision;
+    }
+
+    private Rule rule(String routeId) {
+        for (Rule rule : rules) {
+            if (rule.limit().id().equals(routeId)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 把上次同步後有變動的 bucket 用量累加到 Redis，並扣掉其他副本在這段期間的用量
+     */
+    private void sync() {
+        if (dirtyKeys.isEmpty() || System.currentTimeMillis() < suspendedUntilMillis) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(dirtyKeys);
+        dirtyKeys.removeAll(keys);
+        try {
+            Flux.fromIterable(keys)
+                    .flatMap(this::syncBucket, 64)
+                    .then()
+                    .block(Duration.ofMillis(redisTimeoutMs).plusSeconds(1));
+        } catch (RuntimeException e) {
+            logger.debug("限流同步未完成: {}", e.getMessage());
+        }
+    }
+
+    private Mono<Void> syncBucket(String key) {
+        Bucket bucket = buckets.getIfPresent(key);
+        Rule rule = bucket != null ? rule(key.substring(0, key.indexOf(':'))) : null;
+        if (rule == null) {
+            return Mono.empty();
+        }
+        long delta = bucket.drainPending();
+        return redisTemplate.execute(SYNC_SCRIPT, List.of(KEY_PREFIX + key),
+                        List.of(Long.toString(delta), Long.toString(idleSeconds)))
+                .next()
+                .timeout(Duration.ofMillis(redisTimeoutMs))
+                .doOnNext(total -> {
+                    consecutiveFailures = 0;
+                    syncSuccess.increment();
+                    bucket.applyGlobalTotal(total, delta, rule.limit().burst());
+                })
+                .onErrorResume(error -> {
+                    recordFailure(error);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void recordFailure(Throwable error) {
+        syncFailure.increment();
+        if (++consecutiveFailures >= FAILURE_THRESHOLD) {
+            suspendedUntilMillis = System.currentTimeMillis() + Duration.ofSeconds(cooldownSeconds).toMillis();
+            consecutiveFailures = 0;
+            logger.warn("限流同步連續失敗，暫停同步 {}s，只使用本地限流: error={}", cooldownSeconds, error.toString());
+        } else {
+            logger.debug("限流同步失敗: {}", error.toString());
+        }
+    }
+
+    private Counter requestCounter(String routeId, String result) {
+        return Counter.builder("gateway.ratelimit.requests")
+                .tag("route", routeId)
+                .tag("result", result)
+                .description("限流判斷結果")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 本地 token bucket；{@code pending} 為上次同步後本機用掉的 token 數
+     */
+    static final class Bucket {
+
+        private double tokens;
+        private long refilledAtNanos;
+        private long pending;
+        private long lastSeenTotal = -1;
+        private boolean dirty;
+
+        Bucket(int burst, long nowNanos) {
+            this.tokens = burst;
+            this.refilledAtNanos = nowNanos;
+        }
+
+        synchronized Decision tryConsume(double replenishPerSecond, int burst, long nowNanos) {
+            double elapsedSeconds = (nowNanos - refilledAtNanos) / 1_000_000_000.0;
+            tokens = Math.min(burst, tokens + elapsedSeconds * replenishPerSecond);
+            refilledAtNanos = nowNanos;
+            if (tokens >= 1) {
+                tokens -= 1;
+                pending++;
+                return Decision.ALLOWED;
+            }
+            long retryAfter = (long) Math.ceil((1 - tokens) / replenishPerSecond);
+            return new Decision(false, Math.max(1, retryAfter));
+        }
+
+        /**
+         * @return 先前未標記時為 true（需要加入待同步清單）
+         */
+        synchronized boolean markDirty() {
+            if (dirty) {
+                return false;
+            }
+            dirty = true;
+            return true;
+        }
+
+        synchronized long drainPending() {
+            long drained = pending;
+            pending = 0;
+            dirty = false;
+            return drained;
+        }
+
+        /**
+         * 依 Redis 累計用量扣掉其他副本用掉的 token（第一次同步只記錄基準）
+         */
+        synchronized void applyGlobalTotal(long total, long ownDelta, int burst) {
+            if (lastSeenTotal >= 0) {
+                long others = total - lastSeenTotal - ownDelta;
+                if (others > 0) {
+                    tokens = Math.max(-burst, tokens - others);
+                }
+            }
+            lastSeenTotal = total;
+        }
+    }
+}
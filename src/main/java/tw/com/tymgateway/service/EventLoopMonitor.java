@@ -0,0 +1,157 @@
+package tw.com.tymgateway.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.netty.resources.LoopResources;
+import tw.com.tymgateway.config.NettyResourcesConfig;
+
+/**
+ * Event loop 監控
+ *
+ * <p>定期對每個 event loop 投遞一個探測任務，量測從投遞到執行的延遲（lag）；lag 持續升高
+ * 代表該 event loop 已接近滿載或被阻塞程式碼佔用。同時輸出每個 event loop 的待處理任務數，
+ * 作為調整 CPU limit 與 {@code gateway.netty.*-threads} 的依據。</p>
+ *
+ * <p>指標：{@code gateway.eventloop.lag}（ms）、{@code gateway.eventloop.pending.tasks}，
+ * 以 {@code group}（ingress / backend / keycloak）與 {@code loop} 標籤區分。</p>
+ */
+@Service
+public class EventLoopMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventLoopMonitor.class);
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, LoopResources> loops;
+    private final boolean useNative;
+    private final List<Probe> probes = new ArrayList<>();
+
+    @Value("${gateway.netty.monitor-interval-ms:1000}")
+    private long monitorIntervalMs;
+
+    @Value("${gateway.netty.lag-warn-threshold-ms:100}")
+    private long lagWarnThresholdMs;
+
+    private final ScheduledExecutorService prober =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "eventloop-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    public EventLoopMonitor(
+            MeterRegistry meterRegistry,
+            NettyResourcesConfig nettyResourcesConfig,
+            @Qualifier("ingressLoopResources") LoopResources ingressLoopResources,
+            @Qualifier("backendLoopResources") LoopResources backendLoopResources,
+            @Qualifier("keycloakLoopResources") LoopResources keycloakLoopResources) {
+        this.meterRegistry = meterRegistry;
+        this.useNative = nettyResourcesConfig.useNative();
+        this.loops = Map.of(
+                "ingress", ingressLoopResources,
+                "backend", backendLoopResources,
+                "keycloak", keycloakLoopResources);
+    }
+
+    @PostConstruct
+    public void init() {
+        loops.forEach((group, resources) -> {
+            EventLoopGroup eventLoopGroup = group.equals("ingress")
+                    ? resources.onServer(useNative)
+                    : resources.onClient(useNative);
+            int index = 0;
+            for (EventExecutor executor : eventLoopGroup) {
+                Probe probe = new Probe(group, executor);
+                String loop = String.valueOf(index++);
+                Gauge.builder("gateway.eventloop.lag", probe, p -> p.lagMs.get())
+                        .tags("group", group, "loop", loop)
+                        .description("探測任務從投遞到執行的延遲 (ms)")
+                        .baseUnit("milliseconds")
+                        .register(meterRegistry);
+                if (executor instanceof SingleThreadEventExecutor singleThread) {
+                    Gauge.builder("gateway.eventloop.pending.tasks", singleThread, SingleThreadEventExecutor::pendingTasks)
+                            .tags("group", group, "loop", loop)
+                            .description("event loop 待處理的任務數")
+                            .register(meterRegistry);
+                }
+                probes.add(probe);
+            }
+        });
+        prober.scheduleWithFixedDelay(this::probe, monitorIntervalMs, monitorIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Event loop 監控已啟動: loops={}, interval={}ms", probes.size(), monitorIntervalMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prober.shutdownNow();
+    }
+
+    private void probe() {
+        for (Probe probe : probes) {
+            probe.submit();
+        }
+    }
+
+    /**
+     * 單一 event loop 的探測狀態
+     */
+    private final class Probe {
+
+        private final String group;
+        private final EventExecutor executor;
+        private final AtomicLong lagMs = new AtomicLong();
+        private volatile boolean pending;
+        private volatile long submittedNanos;
+
+        Probe(String group, EventExecutor executor) {
+            this.group = group;
+            this.executor = executor;
+        }
+
+        void submit() {
+            if (pending) {
+                // 上一個探測任務還沒執行，lag 至少是從上次投遞到現在
+                lagMs.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedNanos));
+                return;
+            }
+            if (executor.isShuttingDown()) {
+                return;
+            }
+            pending = true;
+            submittedNanos = System.nanoTime();
+            try {
+                executor.execute(this::run);
+            } catch (RejectedExecutionException e) {
+                pending = false;
+            }
+        }
+
+        private void run() {
+            long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedNanos);
+            lagMs.set(lag);
+            pending = false;
+            if (lag > lagWarnThresholdMs) {
+                logger.warn("Event loop 延遲過高: group={}, thread={}, lag={}ms", group, Thread.currentThread().getName(), lag);
+            }
+        }
+    }
+}
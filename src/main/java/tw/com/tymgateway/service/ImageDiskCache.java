@@ -0,0 +1,550 @@
+package tw.com.tymgateway.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import tw.com.tymgateway.util.HashUtil;
+
+/**
+ * 圖片兩層快取（heap 熱資料 + 磁碟）
+ *
+ * <p>圖片太大，不適合放進 512Mi heap 的 {@link ResponseCache}，改以磁碟保存：</p>
+ * <ul>
+ *   <li>檔名以快取 key 的 SHA-256 開頭（{@code <hash>.meta} 為 header、期限與主體檔名；
+ *       主體為 {@code <hash>-<uuid>.bin}，每次寫入都是新檔案）</li>
+ *   <li>以總位元組數做 LRU 淘汰（{@code gateway.image-cache.max-disk-bytes}）</li>
+ *   <li>啟動時掃描目錄重建索引；掛載 volume 時重啟後快取仍然有效</li>
+ *   <li>小圖片另外放在 Caffeine 熱資料層，避免重複讀檔</li>
+ * </ul>
+ *
+ * <p>磁碟讀寫都在 boundedElastic 執行，不佔用 event loop；磁碟層的命中由過濾器以 zero-copy 傳送。
+ * 寫入以 {@link Capture} 邊收邊寫入暫存檔，完成後才改名並加入索引，不在 heap 中保留整張圖片。</p>
+ *
+ * <p>淘汰、過期或被新內容取代的主體檔，若仍有請求正在傳送（{@link Hit#release()} 之前），
+ * 等最後一個傳送結束後才刪除。</p>
+ */
+@Service
+public class ImageDiskCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDiskCache.class);
+
+    private static final String DATA_SUFFIX = ".bin";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** 同一個串流的訊號之間偶有競爭（例如取消與資料同時到達）時重試 */
+    private static final Sinks.EmitFailureHandler EMIT_RETRY = Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1));
+
+    /** 熱資料層命中不需要釋放 */
+    private static final Runnable NO_RELEASE = () -> { };
+
+    /** 淘汰時降到上限的比例，避免每次寫入都觸發淘汰 */
+    private static final double EVICT_TARGET_RATIO = 0.9;
+
+    /**
+     * 快取命中
+     *
+     * @param headers 要回傳的 header（Content-Type、ETag、Last-Modified、Cache-Control）
+     * @param size    主體大小
+     * @param bytes   熱資料層的主體；為 null 時從 {@code path} 讀取
+     * @param path    磁碟上的主體檔案
+     * @param storedAtMillis 寫入時間
+     * @param onRelease 傳送結束後呼叫，允許刪除主體檔
+     */
+    public record Hit(HttpHeaders headers, long size, byte[] bytes, Path path, long storedAtMillis,
+            Runnable onRelease) {
+
+        public long ageSeconds() {
+            return Math.max(0, (System.currentTimeMillis() - storedAtMillis) / 1000);
+        }
+
+        /**
+         * 傳送結束（成功、失敗或取消）時呼叫；可重複呼叫
+         */
+        public void release() {
+            onRelease.run();
+        }
+    }
+
+    /**
+     * 磁碟索引項目
+     */
+    private static final class DiskEntry {
+
+        private final HttpHeaders headers;
+        private final Path data;
+        private final long size;
+        private final long storedAtMillis;
+        private final long expiresAtMillis;
+        private volatile long lastAccessMillis;
+
+        /** 正在傳送此主體檔的請求數 */
+        private final AtomicInteger readers = new AtomicInteger();
+        /** 已離開索引，最後一個讀取者結束後刪除主體檔 */
+        private volatile boolean retired;
+        private final AtomicBoolean deleted = new AtomicBoolean();
+
+        DiskEntry(HttpHeaders headers, Path data, long size, long storedAtMillis, long expiresAtMillis) {
+            this.headers = headers;
+            this.data = data;
+            this.size = size;
+            this.storedAtMillis = storedAtMillis;
+            this.expiresAtMillis = expiresAtMillis;
+            this.lastAccessMillis = System.currentTimeMillis();
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiresAtMillis;
+        }
+    }
+
+    /**
+     * 進行中的圖片寫入
+     *
+     * <p>響應主體每個區塊複製一份後依序寫入暫存檔（AsynchronousFileChannel），同時計算內容雜湊；
+     * 主體結束時改名為正式主體檔、寫入 meta 並加入索引。超過 {@code max-entry-bytes}、
+     * 上游錯誤或客戶端中斷時放棄並刪除暫存檔。{@link #append}、{@link #complete}、{@link #abort}
+     * 由同一個響應串流呼叫。</p>
+     */
+    public final class Capture {
+
+        private final String hash;
+        private final HttpHeaders headers;
+        private final Duration ttl;
+        private final Path data;
+        private final Path temp;
+        private final MessageDigest digest = HashUtil.newSha256();
+        private final Sinks.Many<DataBuffer> chunks = Sinks.many().unicast().onBackpressureBuffer();
+        private long size;
+        private volatile boolean aborted;
+
+        private Capture(String key, HttpHeaders headers, Duration ttl) {
+            this.hash = hash(key);
+            this.headers = headers;
+            this.ttl = ttl;
+            this.data = root.resolve(hash + "-" + UUID.randomUUID() + DATA_SUFFIX);
+            this.temp = root.resolve(data.getFileName() + TEMP_SUFFIX);
+            Mono.using(
+                            () -> AsynchronousFileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW),
+                            channel -> DataBufferUtils.write(chunks.asFlux(), channel).then(),
+                            ImageDiskCache::closeQuietly,
+                            true)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .publishOn(Schedulers.boundedElastic())
+                    .then(Mono.fromRunnable(this::commit))
+                    .subscribe(null, error -> {
+                        deleteQuietly(temp);
+                        if (!aborted) {
+                            logger.warn("圖片快取寫入失敗: hash={}, error={}", hash, error.getMessage());
+                        }
+                    });
+        }
+
+        /**
+         * 複製一個區塊（不改變 buffer 的讀取位置）
+         */
+        public void append(DataBuffer buffer) {
+            if (aborted) {
+                return;
+            }
+            int length = buffer.readableByteCount();
+            if (size + length > maxEntryBytes) {
+                abort();
+                return;
+            }
+            size += length;
+            byte[] chunk = new byte[length];
+            int offset = 0;
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    ByteBuffer byteBuffer = iterator.next();
+                    int remaining = byteBuffer.remaining();
+                    byteBuffer.get(chunk, offset, remaining);
+                    offset += remaining;
+                }
+            }
+            digest.update(chunk);
+            chunks.emitNext(DefaultDataBufferFactory.sharedInstance.wrap(chunk), EMIT_RETRY);
+        }
+
+        /**
+         * 主體已完整收到，寫完後加入快取
+         */
+        public void complete() {
+            if (!aborted) {
+                chunks.emitComplete(EMIT_RETRY);
+            }
+        }
+
+        /**
+         * 放棄寫入並刪除暫存檔
+         */
+        public void abort() {
+            if (!aborted) {
+                aborted = true;
+                chunks.emitError(new CancellationException("image capture aborted"), EMIT_RETRY);
+            }
+        }
+
+        private void commit() {
+            try {
+                long now = System.currentTimeMillis();
+                HttpHeaders kept = new HttpHeaders();
+                kept.addAll(headers);
+                if (kept.getETag() == null) {
+                    // 後端沒有 ETag 時以內容雜湊產生
+                    kept.setETag("\"" + HashUtil.toHex(digest) + "\"");
+                }
+                Files.move(temp, data, StandardCopyOption.ATOMIC_MOVE);
+                byte[] hotBytes = size <= hotMaxEntryBytes ? Files.readAllBytes(data) : null;
+
+                Properties meta = new Properties();
+                kept.forEach((name, values) -> meta.setProperty("header." + name, values.get(0)));
+                meta.setProperty("data", data.getFileName().toString());
+                meta.setProperty("size", String.valueOf(size));
+                meta.setProperty("storedAt", String.valueOf(now));
+                meta.setProperty("expiresAt", String.valueOf(now + ttl.toMillis()));
+                Path metaTemp = root.resolve(hash + META_SUFFIX + TEMP_SUFFIX);
+                try (OutputStream out = Files.newOutputStream(metaTemp)) {
+                    meta.store(out, null);
+                }
+                Files.move(metaTemp, metaPath(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                DiskEntry entry = new DiskEntry(HttpHeaders.readOnlyHttpHeaders(kept), data, size, now, now + ttl.toMillis());
+                DiskEntry previous = index.put(hash, entry);
+                diskBytes.addAndGet(size - (previous != null ? previous.size : 0));
+                if (previous != null) {
+                    retire(previous);
+                }
+                if (hotBytes != null) {
+                    hot.put(hash, hotBytes);
+                } else {
+                    hot.invalidate(hash);
+                }
+                evictIfNeeded();
+            } catch (IOException e) {
+                deleteQuietly(data);
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, DiskEntry> index = new ConcurrentHashMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    @Value("${gateway.image-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gateway.image-cache.directory:${java.io.tmpdir}/tymg-image-cache}")
+    private String directory;
+
+    @Value("${gateway.image-cache.max-disk-bytes:1073741824}")
+    private long maxDiskBytes;
+
+    @Value("${gateway.image-cache.max-entry-bytes:8388608}")
+    private int maxEntryBytes;
+
+    @Value("${gateway.image-cache.hot-max-bytes:16777216}")
+    private long hotMaxBytes;
+
+    @Value("${gateway.image-cache.hot-max-entry-bytes:262144}")
+    private int hotMaxEntryBytes;
+
+    private Path root;
+    private Cache<String, byte[]> hot;
+    private Counter hotHits;
+    private Counter diskHits;
+    private Counter misses;
+
+    public ImageDiskCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        hot = Caffeine.newBuilder()
+                .maximumWeight(hotMaxBytes)
+                .weigher((String key, byte[] value) -> value.length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, hot, "gateway.image.cache.hot");
+        Gauge.builder("gateway.image.cache.disk.bytes", diskBytes, AtomicLong::get)
+                .description("圖片磁碟快取佔用的位元組數")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("gateway.image.cache.disk.entries", index, Map::size)
+                .description("圖片磁碟快取的檔案數")
+                .register(meterRegistry);
+        hotHits = Counter.builder("gateway.image.cache.requests").tag("result", "hot")
+                .description("圖片快取查詢次數").register(meterRegistry);
+        diskHits = Counter.builder("gateway.image.cache.requests").tag("result", "disk")
+                .description("圖片快取查詢次數").register(meterRegistry);
+        misses = Counter.builder("gateway.image.cache.requests").tag("result", "miss")
+                .description("圖片快取查詢次數").register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+        try {
+            root = Paths.get(directory);
+            Files.createDirectories(root);
+            rebuildIndex();
+            logger.info("圖片磁碟快取: dir={}, entries={}, bytes={}", root, index.size(), diskBytes.get());
+        } catch (IOException e) {
+            logger.warn("圖片磁碟快取目錄無法使用，停用磁碟快取: dir={}, error={}", directory, e.getMessage());
+            enabled = false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * 查詢快取
+     *
+     * @param key 快取 key（原始 URL）
+     * @return 命中結果；未命中或已過期時為 empty
+     */
+    public Optional<Hit> lookup(String key) {
+        String hash = hash(key);
+        DiskEntry entry = index.get(hash);
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        if (entry.isExpired()) {
+            misses.increment();
+            Schedulers.boundedElastic().schedule(() -> remove(hash, entry));
+            return Optional.empty();
+        }
+        entry.lastAccessMillis = System.currentTimeMillis();
+        byte[] bytes = hot.getIfPresent(hash);
+        if (bytes != null) {
+            hotHits.increment();
+            return Optional.of(new Hit(entry.headers, bytes.length, bytes, entry.data, entry.storedAtMillis, NO_RELEASE));
+        }
+        entry.readers.incrementAndGet();
+        if (entry.retired) {
+            // 剛被淘汰或取代，主體檔可能已刪除
+            release(entry);
+            misses.increment();
+            return Optional.empty();
+        }
+        diskHits.increment();
+        AtomicBoolean released = new AtomicBoolean();
+        return Optional.of(new Hit(entry.headers, entry.size, null, entry.data, entry.storedAtMillis, () -> {
+            if (released.compareAndSet(false, true)) {
+                release(entry);
+            }
+        }));
+    }
+
+    /**
+     * 開始寫入一張圖片；呼叫端在響應主體串流中依序呼叫 {@link Capture#append}、
+     * {@link Capture#complete} 或 {@link Capture#abort}
+     *
+     * @param key     快取 key（原始 URL）
+     * @param headers 後端響應 header（只保留 Content-Type、Cache-Control、Last-Modified、ETag）
+     * @param ttl     存活時間
+     * @return 寫入工作
+     */
+    public Capture beginCapture(String key, HttpHeaders headers, Duration ttl) {
+        HttpHeaders kept = new HttpHeaders();
+        copy(headers, kept, HttpHeaders.CONTENT_TYPE);
+        copy(headers, kept, HttpHeaders.CACHE_CONTROL);
+        copy(headers, kept, HttpHeaders.LAST_MODIFIED);
+        copy(headers, kept, HttpHeaders.ETAG);
+        return new Capture(key, kept, ttl);
+    }
+
+    private synchronized void evictIfNeeded() {
+        if (diskBytes.get() <= maxDiskBytes) {
+            return;
+        }
+        long target = (long) (maxDiskBytes * EVICT_TARGET_RATIO);
+        List<Map.Entry<String, DiskEntry>> entries = new ArrayList<>(index.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccessMillis));
+        int evicted = 0;
+        for (Map.Entry<String, DiskEntry> entry : entries) {
+            if (diskBytes.get() <= target) {
+                break;
+            }
+            remove(entry.getKey(), entry.getValue());
+            evicted++;
+        }
+        logger.debug("圖片磁碟快取淘汰: evicted={}, bytes={}", evicted, diskBytes.get());
+    }
+
+    /**
+     * 從索引移除（已被新內容取代時不動作）；主體檔在沒有請求傳送時才刪除
+     */
+    private void remove(String hash, DiskEntry entry) {
+        if (!index.remove(hash, entry)) {
+            return;
+        }
+        diskBytes.addAndGet(-entry.size);
+        hot.invalidate(hash);
+        deleteQuietly(metaPath(hash));
+        retire(entry);
+    }
+
+    private void retire(DiskEntry entry) {
+        entry.retired = true;
+        if (entry.readers.get() == 0) {
+            deleteData(entry);
+        }
+    }
+
+    private void release(DiskEntry entry) {
+        if (entry.readers.decrementAndGet() == 0 && entry.retired) {
+            deleteData(entry);
+        }
+    }
+
+    private void deleteData(DiskEntry entry) {
+        if (entry.deleted.compareAndSet(false, true)) {
+            Schedulers.boundedElastic().schedule(() -> deleteQuietly(entry.data));
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.debug("刪除圖片快取檔案失敗: file={}, error={}", file, e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("關閉圖片快取暫存檔失敗: {}", e.getMessage());
+        }
+    }
+
+    private void rebuildIndex() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (!name.endsWith(META_SUFFIX)) {
+                    continue;
+                }
+                String hash = name.substring(0, name.length() - META_SUFFIX.length());
+                Optional<DiskEntry> entry = readMeta(hash, file);
+                if (entry.isEmpty() || entry.get().isExpired() || !Files.exists(entry.get().data)
+                        || Files.size(entry.get().data) != entry.get().size) {
+                    Files.deleteIfExists(file);
+                    if (entry.isPresent()) {
+                        Files.deleteIfExists(entry.get().data);
+                    }
+                    continue;
+                }
+                index.put(hash, entry.get());
+                diskBytes.addAndGet(entry.get().size);
+            }
+        }
+        // 清除沒有 meta 指向的孤兒主體檔（包含被取代後未刪除的舊版本）
+        Set<Path> referenced = new HashSet<>();
+        index.values().forEach(entry -> referenced.add(entry.data));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "*" + DATA_SUFFIX)) {
+            for (Path file : files) {
+                if (!referenced.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        evictIfNeeded();
+    }
+
+    private Optional<DiskEntry> readMeta(String hash, Path file) {
+        Properties meta = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            meta.load(in);
+            HttpHeaders headers = new HttpHeaders();
+            for (String name : meta.stringPropertyNames()) {
+                if (name.startsWith("header.")) {
+                    headers.set(name.substring("header.".length()), meta.getProperty(name));
+                }
+            }
+            // 舊版 meta 沒有 data 欄位，主體檔為 <hash>.bin
+            Path data = root.resolve(meta.getProperty("data", hash + DATA_SUFFIX));
+            return Optional.of(new DiskEntry(HttpHeaders.readOnlyHttpHeaders(headers), data,
+                    Long.parseLong(meta.getProperty("size")),
+                    Long.parseLong(meta.getProperty("storedAt")),
+                    Long.parseLong(meta.getProperty("expiresAt"))));
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void copy(HttpHeaders from, HttpHeaders to, String name) {
+        String value = from.getFirst(name);
+        if (value != null) {
+            to.set(name, value);
+        }
+    }
+
+    private Path metaPath(String hash) {
+        return root.resolve(hash + META_SUFFIX);
+    }
+
+    private static String hash(String key) {
+        return HashUtil.sha256(key);
+    }
+}
@@ -0,0 +1,219 @@
+package tw.com.tymgateway.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keycloak JWKS（簽章公鑰）管理
+ *
+ * <p>保存最近一次取得的 JWK Set，作為 {@code SecurityConfig.reactiveJwtDecoder} 的金鑰來源：</p>
+ * <ul>
+ *   <li>啟動時立即取得，之後每 {@code refresh-interval-seconds} 在背景更新</li>
+ *   <li>Token 的 kid 不在現有金鑰中（金鑰輪替）時重新取得，但兩次按需取得至少間隔
+ *       {@code min-refetch-interval-seconds}，避免偽造的 kid 讓 Gateway 不斷打 Keycloak</li>
+ *   <li>取得失敗時沿用上一次成功的金鑰，Keycloak 短暫無法連線不影響驗證</li>
+ *   <li>同一時間只會有一個取得請求，其他驗證中的請求共用結果</li>
+ * </ul>
+ *
+ * <p>指標：{@code gateway.jwks.refresh}（tag: result）、{@code gateway.jwks.keys}、
+ * {@code gateway.jwks.age}（距離上次成功取得的秒數）。</p>
+ */
+@Service
+public class JwksManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwksManager.class);
+
+    private final WebClient webClient;
+    private final String jwkSetUri;
+    private final Duration fetchTimeout;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${gateway.jwks.refresh-interval-seconds:300}")
+    private long refreshIntervalSeconds;
+
+    @Value("${gateway.jwks.min-refetch-interval-seconds:10}")
+    private long minRefetchIntervalSeconds;
+
+    private final AtomicReference<JWKSet> current = new AtomicReference<>();
+    private final AtomicReference<Mono<JWKSet>> inflight = new AtomicReference<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong lastOnDemandFetchMillis = new AtomicLong();
+    private volatile long lastSuccessMillis;
+
+    private Counter successCounter;
+    private Counter failureCounter;
+    private Counter rateLimitedCounter;
+
+    private final ScheduledExecutorService refresher =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwks-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    public JwksManager(
+            @Qualifier("keycloakWebClient") WebClient keycloakWebClient,
+            MeterRegistry meterRegistry,
+            @Value("${keycloak.auth-server-url}") String keycloakAuthServerUrl,
+            @Value("${keycloak.realm}") String keycloakRealm,
+            @Value("${gateway.jwks.fetch-timeout-ms:5000}") long fetchTimeoutMs) {
+        this.webClient = keycloakWebClient;
+        this.meterRegistry = meterRegistry;
+        this.jwkSetUri = keycloakAuthServerUrl + "/realms/" + keycloakRealm + "/protocol/openid-connect/certs";
+        this.fetchTimeout = Duration.ofMillis(fetchTimeoutMs);
+    }
+
+    @PostConstruct
+    public void init() {
+        successCounter = Counter.builder("gateway.jwks.refresh").tag("result", "success")
+                .description("JWKS 取得次數").register(meterRegistry);
+        failureCounter = Counter.builder("gateway.jwks.refresh").tag("result", "failure")
+                .description("JWKS 取得次數").register(meterRegistry);
+        rateLimitedCounter = Counter.builder("gateway.jwks.refresh").tag("result", "rate_limited")
+                .description("JWKS 取得次數").register(meterRegistry);
+        Gauge.builder("gateway.jwks.keys", current, ref -> ref.get() != null ? ref.get().getKeys().size() : 0)
+                .description("目前可用的 JWKS 金鑰數")
+                .register(meterRegistry);
+        Gauge.builder("gateway.jwks.age", this,
+                        manager -> manager.lastSuccessMillis == 0
+                                ? Double.NaN
+                                : (System.currentTimeMillis() - manager.lastSuccessMillis) / 1000.0)
+                .description("距離上次成功取得 JWKS 的時間")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        refresher.scheduleWithFixedDelay(this::scheduledRefresh, 0, refreshIntervalSeconds, TimeUnit.SECONDS);
+        logger.info("JWKS 背景更新已啟動: uri={}, interval={}s", jwkSetUri, refreshIntervalSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    public String getJwkSetUri() {
+        return jwkSetUri;
+    }
+
+    /**
+     * 註冊金鑰集合變更（新增、移除或輪替金鑰）時的通知
+     */
+    public void addKeySetChangeListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 依 Token header（kid、alg）選出驗證用的金鑰；現有金鑰中找不到時，
+     * 在頻率限制內重新取得一次
+     */
+    public Flux<JWK> select(SignedJWT jwt) {
+        JWKMatcher matcher = JWKMatcher.forJWSHeader(jwt.getHeader());
+        if (matcher == null) {
+            return Flux.empty();
+        }
+        JWKSelector selector = new JWKSelector(matcher);
+        JWKSet cached = current.get();
+        if (cached != null) {
+            List<JWK> keys = selector.select(cached);
+            if (!keys.isEmpty()) {
+                return Flux.fromIterable(keys);
+            }
+        }
+        // 已有進行中的取得（啟動、背景更新）時直接等待結果，不佔用按需取得的額度
+        Mono<JWKSet> pending = inflight.get();
+        if (pending == null) {
+            if (!tryAcquireOnDemandFetch()) {
+                rateLimitedCounter.increment();
+                return Flux.empty();
+            }
+            logger.info("Token kid 不在現有 JWKS 中，重新取得: kid={}", jwt.getHeader().getKeyID());
+            pending = refresh();
+        }
+        return pending
+                .onErrorResume(error -> Mono.empty())
+                .flatMapIterable(selector::select);
+    }
+
+    /**
+     * 重新向 Keycloak 取得 JWK Set（已有進行中的請求時共用）；失敗時保留現有金鑰
+     */
+    public Mono<JWKSet> refresh() {
+        Mono<JWKSet> fetch = webClient.get()
+                .uri(jwkSetUri)
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(fetchTimeout)
+                .map(JwksManager::parse)
+                .doOnNext(keys -> {
+                    lastSuccessMillis = System.currentTimeMillis();
+                    successCounter.increment();
+                    JWKSet previous = current.getAndSet(keys);
+                    if (previous == null || !previous.toJSONObject().equals(keys.toJSONObject())) {
+                        logger.info("JWKS 已更新: keys={}", keys.getKeys().size());
+                        listeners.forEach(Runnable::run);
+                    }
+                })
+                .doOnError(error -> {
+                    failureCounter.increment();
+                    logger.warn("JWKS 取得失敗，沿用現有金鑰: uri={}, keys={}, error={}", jwkSetUri,
+                            current.get() != null ? current.get().getKeys().size() : 0, error.toString());
+                })
+                .doFinally(signal -> inflight.set(null))
+                .cache();
+        if (inflight.compareAndSet(null, fetch)) {
+            return fetch;
+        }
+        Mono<JWKSet> existing = inflight.get();
+        return existing != null ? existing : fetch;
+    }
+
+    private void scheduledRefresh() {
+        try {
+            refresh().onErrorResume(error -> Mono.empty()).block(fetchTimeout.plusSeconds(1));
+        } catch (RuntimeException e) {
+            logger.debug("JWKS 背景更新失敗: {}", e.getMessage());
+        }
+    }
+
+    private boolean tryAcquireOnDemandFetch() {
+        long now = System.currentTimeMillis();
+        long last = lastOnDemandFetchMillis.get();
+        return now - last >= Duration.ofSeconds(minRefetchIntervalSeconds).toMillis()
+                && lastOnDemandFetchMillis.compareAndSet(last, now);
+    }
+
+    private static JWKSet parse(String body) {
+        try {
+            return JWKSet.parse(body);
+        } catch (java.text.ParseException e) {
+            throw new IllegalStateException("Invalid JWK Set response", e);
+        }
+    }
+}
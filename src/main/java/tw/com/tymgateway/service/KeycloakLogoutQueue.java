@@ -0,0 +1,254 @@
+package tw.com.tymgateway.service;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Keycloak 登出工作隊列
+ *
+ * <p>{@code /tymg/keycloak/logout} 收到請求後立即回應，撤銷 refresh token 與清除伺服器端 session
+ * 交給本隊列在背景執行。加入隊列前先在 {@link TokenIntrospectionCache} 記錄該 session 已撤銷，
+ * 並清除 {@link TokenRefreshCoalescer} 保留的續期結果，背景登出完成前 introspection 不會再回報 active，
+ * 重送同一個 refresh token 也拿不到登出前的 token：</p>
+ * <ul>
+ *   <li>隊列有上限（{@code queue-capacity}），滿了直接丟棄（refresh token 仍會自然過期）</li>
+ *   <li>最多 {@code concurrency} 個登出同時進行，每個登出的兩個步驟並行送出</li>
+ *   <li>連線錯誤、逾時與 5xx 以指數退避重試 {@code max-retries} 次；4xx（token 已失效）不重試</li>
+ *   <li>排隊超過 {@code max-age-seconds} 的工作直接丟棄</li>
+ * </ul>
+ *
+ * <p>指標：{@code gateway.keycloak.logout.queue.depth}、
+ * {@code gateway.keycloak.logout.steps}（tag: step、result）、
+ * {@code gateway.keycloak.logout.dropped}（tag: reason）。</p>
+ */
+@Service
+public class KeycloakLogoutQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakLogoutQueue.class);
+
+    private record Task(String refreshToken, String idToken, long enqueuedAtMillis) {
+    }
+
+    private final WebClient keycloakWebClient;
+    private final TokenIntrospectionCache tokenIntrospectionCache;
+    private final TokenRefreshCoalescer tokenRefreshCoalescer;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keycloak.auth-server-url}")
+    private String ssoUrl;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    @Value("${keycloak.clientId:${keycloak.resource}}")
+    private String clientId;
+
+    @Value("${keycloak.credentials.secret}")
+    private String clientSecret;
+
+    @Value("${url.frontend}")
+    private String frontendUrl;
+
+    @Value("${gateway.keycloak.logout.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${gateway.keycloak.logout.concurrency:8}")
+    private int concurrency;
+
+    @Value("${gateway.keycloak.logout.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${gateway.keycloak.logout.initial-backoff-ms:500}")
+    private long initialBackoffMs;
+
+    @Value("${gateway.keycloak.logout.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private ArrayBlockingQueue<Task> buffer;
+    private Sinks.Many<Task> sink;
+    private Disposable worker;
+
+    private Counter droppedFull;
+    private Counter droppedStale;
+
+    public KeycloakLogoutQueue(
+            @Qualifier("keycloakWebClient") WebClient keycloakWebClient,
+            TokenIntrospectionCache tokenIntrospectionCache,
+            TokenRefreshCoalescer tokenRefreshCoalescer,
+            MeterRegistry meterRegistry) {
+        this.keycloakWebClient = keycloakWebClient;
+        this.tokenIntrospectionCache = tokenIntrospectionCache;
+        this.tokenRefreshCoalescer = tokenRefreshCoalescer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        buffer = new ArrayBlockingQueue<>(queueCapacity);
+        sink = Sinks.many().unicast().onBackpressureBuffer(buffer);
+
+        Gauge.builder("gateway.keycloak.logout.queue.depth", this, queue -> queue.buffer.size() + queue.inFlight.get())
+                .description("等待中與執行中的 Keycloak 登出工作數")
+                .register(meterRegistry);
+        droppedFull = Counter.builder("gateway.keycloak.logout.dropped").tag("reason", "queue_full")
+                .description("未執行的 Keycloak 登出工作數").register(meterRegistry);
+        droppedStale = Counter.builder("gateway.keycloak.logout.dropped").tag("reason", "stale")
+                .description("未執行的 Keycloak 登出工作數").register(meterRegistry);
+
+        worker = sink.asFlux()
+                .flatMap(this::process, concurrency)
+                .subscribe(null, error -> logger.error("Keycloak 登出隊列異常終止", error));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (worker != null) {
+            worker.dispose();
+        }
+    }
+
+    /**
+     * 加入登出工作
+     *
+     * @param refreshToken 要撤銷的 refresh token
+     * @param idToken      用於清除伺服器端 session 的 id token，可為 null
+     * @return 是否成功加入（隊列已滿時為 false）
+     */
+    public boolean submit(String refreshToken, String idToken) {
+        // 隊列已滿時也要生效：本地撤銷不依賴 Keycloak 登出是否送出
+        tokenIntrospectionCache.revokeSession(refreshToken);
+        tokenIntrospectionCache.revokeSession(idToken);
+        // 登出後重送同一個 refresh token 不可再拿到登出前保留的 token
+        tokenRefreshCoalescer.invalidate(refreshToken);
+        Task task = new Task(refreshToken, idToken, System.currentTimeMillis());
+        while (true) {
+            Sinks.EmitResult result = sink.tryEmitNext(task);
+            if (result.isSuccess()) {
+                return true;
+            }
+            if (result != Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                droppedFull.increment();
+                logger.warn("Keycloak 登出隊列已滿，略過撤銷: result={}", result);
+                return false;
+            }
+            // 其他執行緒正在寫入，稍後重試
+            Thread.onSpinWait();
+        }
+    }
+
+    private Mono<Void> process(Task task) {
+        if (System.currentTimeMillis() - task.enqueuedAtMillis() > Duration.ofSeconds(maxAgeSeconds).toMillis()) {
+            droppedStale.increment();
+            return Mono.empty();
+        }
+        inFlight.incrementAndGet();
+        Mono<Void> revoke = step("revoke", revokeRefreshToken(task.refreshToken()));
+        Mono<Void> endSession = task.idToken() != null && !task.idToken().isEmpty()
+                ? step("end_session", endSession(task.idToken()))
+                : Mono.empty();
+        return Mono.when(revoke, endSession)
+                .doFinally(signal -> inFlight.decrementAndGet());
+    }
+
+    /**
+     * 撤銷 refresh token：POST /realms/{realm}/protocol/openid-connect/logout
+     */
+    private Mono<Void> revokeRefreshToken(String refreshToken) {
+        MultiValueMap<String, String> bodyParams = new LinkedMultiValueMap<>();
+        bodyParams.add("client_id", clientId);
+        bodyParams.add("client_secret", clientSecret);
+        bodyParams.add("refresh_token", refreshToken);
+        return keycloakWebClient.post()
+                .uri(ssoUrl + "/realms/" + realm + "/protocol/openid-connect/logout")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData(bodyParams))
+                .retrieve()
+                .toBodilessEntity()
+                .then();
+    }
+
+    /**
+     * 清除伺服器端 session：GET end_session_endpoint（id_token_hint）
+     */
+    private Mono<Void> endSession(String idToken) {
+        String endSessionUrl = ssoUrl + "/realms/" + realm + "/protocol/openid-connect/logout"
+                + "?id_token_hint=" + URLEncoder.encode(idToken, StandardCharsets.UTF_8)
+                + "&post_logout_redirect_uri=" + URLEncoder.encode(frontendUrl, StandardCharsets.UTF_8);
+        return keycloakWebClient.get()
+                .uri(URI.create(endSessionUrl))
+                .retrieve()
+                .toBodilessEntity()
+                .then();
+    }
+
+    private Mono<Void> step(String name, Mono<Void> call) {
+        return call
+                .retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(initialBackoffMs))
+                        .filter(KeycloakLogoutQueue::isRetryable))
+                .doOnSuccess(ignored -> stepCounter(name, "success").increment())
+                .onErrorResume(error -> {
+                    Throwable cause = unwrapRetryExhausted(error);
+                    if (cause instanceof WebClientResponseException responseEx
+                            && responseEx.getStatusCode().is4xxClientError()) {
+                        // token 已過期或已登出，視為完成
+                        stepCounter(name, "already_invalid").increment();
+                        logger.debug("Keycloak 登出步驟 {}: HTTP {}（token 可能已失效）", name, responseEx.getStatusCode());
+                    } else {
+                        stepCounter(name, "failed").increment();
+                        logger.warn("Keycloak 登出步驟 {} 失敗: {}", name, cause.toString());
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    private Counter stepCounter(String step, String result) {
+        return Counter.builder("gateway.keycloak.logout.steps")
+                .tag("step", step)
+                .tag("result", result)
+                .description("Keycloak 登出步驟結果")
+                .register(meterRegistry);
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof WebClientResponseException responseEx) {
+            return responseEx.getStatusCode().is5xxServerError();
+        }
+        return error instanceof WebClientRequestException || error instanceof TimeoutException;
+    }
+
+    /** 取出重試用盡時包裝的原始例外 */
+    private static Throwable unwrapRetryExhausted(Throwable error) {
+        return Exceptions.isRetryExhausted(error) && error.getCause() != null ? error.getCause() : error;
+    }
+}
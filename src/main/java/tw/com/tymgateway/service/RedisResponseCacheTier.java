@@ -0,0 +1,234 @@
+package tw.com.tymgateway.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * 跨 Gateway 副本共用的 Redis 響應快取（L2）
+ *
+ * <p>放在本地 {@link ResponseCache} 之後：本地未命中才查 Redis，Redis 命中後回填本地。</p>
+ * <ul>
+ *   <li>值以 gzip 壓縮（header JSON + 主體），壓縮後超過 {@code max-entry-bytes} 的不寫入</li>
+ *   <li>每次存取最多等待 {@code timeout-ms}；逾時或失敗時視為未命中，直接回後端</li>
+ *   <li>連續失敗時暫停使用 Redis {@code cooldown-seconds}，避免每個請求都等到逾時</li>
+ * </ul>
+ *
+ * <p>預設停用（{@code gateway.redis-cache.enabled=false}）。</p>
+ */
+@Service
+public class RedisResponseCacheTier {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisResponseCacheTier.class);
+
+    private static final String KEY_PREFIX = "tymg:cache:";
+
+    /** 序列化格式版本，格式變更時遞增讓舊資料自然失效 */
+    private static final byte FORMAT_VERSION = 1;
+
+    /** 連續失敗多少次後暫停使用 Redis */
+    private static final int FAILURE_THRESHOLD = 3;
+
+    /**
+     * Redis 中的快取項目
+     *
+     * @param headers        保留的響應 header
+     * @param body           響應主體
+     * @param storedAtMillis 寫入時間
+     * @param ttlMillis      存活時間
+     */
+    public record Entry(HttpHeaders headers, byte[] body, long storedAtMillis, long ttlMillis) {
+    }
+
+    private final ReactiveRedisTemplate<String, byte[]> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Duration timeout;
+    private final int maxEntryBytes;
+    private final long cooldownMillis;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter errorCounter;
+    private final DistributionSummary storedBytes;
+
+    private volatile int consecutiveFailures;
+    private volatile long suspendedUntilMillis;
+
+    public RedisResponseCacheTier(
+            ObjectProvider<ReactiveRedisConnectionFactory> connectionFactory,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.redis-cache.enabled:false}") boolean enabled,
+            @Value("${gateway.redis-cache.timeout-ms:50}") long timeoutMs,
+            @Value("${gateway.redis-cache.max-entry-bytes:262144}") int maxEntryBytes,
+            @Value("${gateway.redis-cache.cooldown-seconds:30}") long cooldownSeconds) {
+        ReactiveRedisConnectionFactory factory = connectionFactory.getIfAvailable();
+        this.enabled = enabled && factory != null;
+        this.redisTemplate = this.enabled
+                ? new ReactiveRedisTemplate<>(factory, RedisSerializationContext
+                        .<String, byte[]>newSerializationContext(RedisSerializer.string())
+                        .value(RedisSerializationContext.SerializationPair.byteArray())
+                        .build())
+                : null;
+        this.objectMapper = objectMapper;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.maxEntryBytes = maxEntryBytes;
+        this.cooldownMillis = Duration.ofSeconds(cooldownSeconds).toMillis();
+
+        this.hitCounter = Counter.builder("gateway.redis.cache.requests").tag("result", "hit")
+                .description("Redis 快取查詢次數").register(meterRegistry);
+        this.missCounter = Counter.builder("gateway.redis.cache.requests").tag("result", "miss")
+                .description("Redis 快取查詢次數").register(meterRegistry);
+        this.errorCounter = Counter.builder("gateway.redis.cache.requests").tag("result", "error")
+                .description("Redis 快取查詢次數").register(meterRegistry);
+        this.storedBytes = DistributionSummary.builder("gateway.redis.cache.stored.bytes")
+                .description("寫入 Redis 的壓縮後大小")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        if (this.enabled) {
+            logger.info("Redis 響應快取已啟用: timeout={}ms, maxEntryBytes={}", timeoutMs, maxEntryBytes);
+        }
+    }
+
+    /**
+     * 查詢 Redis；逾時、失敗或暫停中時為 empty
+     */
+    public Mono<Entry> get(String key) {
+        if (!isAvailable()) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForValue().get(KEY_PREFIX + key)
+                .timeout(timeout)
+                .map(this::decode)
+                .doOnNext(entry -> {
+                    consecutiveFailures = 0;
+                    hitCounter.increment();
+                })
+                .switchIfEmpty(Mono.fromRunnable(() -> {
+                    consecutiveFailures = 0;
+                    missCounter.increment();
+                }))
+                .onErrorResume(error -> {
+                    recordFailure("get", error);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 寫入 Redis（不等待結果）
+     */
+    public void put(String key, HttpHeaders headers, byte[] body, Duration ttl) {
+        if (!isAvailable() || ttl.toMillis() <= 0) {
+            return;
+        }
+        byte[] encoded;
+        try {
+            encoded = encode(new Entry(headers, body, System.currentTimeMillis(), ttl.toMillis()));
+        } catch (IOException e) {
+            logger.debug("Redis 快取編碼失敗: key={}, error={}", key, e.getMessage());
+            return;
+        }
+        if (encoded.length > maxEntryBytes) {
+            return;
+        }
+        storedBytes.record(encoded.length);
+        redisTemplate.opsForValue().set(KEY_PREFIX + key, encoded, ttl)
+                .timeout(timeout)
+                .subscribe(null, error -> recordFailure("set", error));
+    }
+
+    /**
+     * 刪除以指定前綴開頭的所有 key（不等待結果）
+     */
+    public void invalidatePrefix(String prefix) {
+        if (!isAvailable()) {
+            return;
+        }
+        ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + escapeGlob(prefix) + "*").count(500).build();
+        redisTemplate.delete(redisTemplate.scan(options))
+                .subscribe(null, error -> recordFailure("invalidate", error));
+    }
+
+    private boolean isAvailable() {
+        return enabled && System.currentTimeMillis() >= suspendedUntilMillis;
+    }
+
+    private void recordFailure(String operation, Throwable error) {
+        errorCounter.increment();
+        if (++consecutiveFailures >= FAILURE_THRESHOLD) {
+            suspendedUntilMillis = System.currentTimeMillis() + cooldownMillis;
+            consecutiveFailures = 0;
+            logger.warn("Redis 快取連續失敗，暫停使用 {}ms: operation={}, error={}", cooldownMillis, operation,
+                    error.toString());
+        } else {
+            logger.debug("Redis 快取 {} 失敗: {}", operation, error.toString());
+        }
+    }
+
+    private byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(entry.body().length / 2 + 256);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(buffer))) {
+            byte[] headers = objectMapper.writeValueAsBytes(entry.headers());
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(entry.storedAtMillis());
+            out.writeLong(entry.ttlMillis());
+            out.writeInt(headers.length);
+            out.write(headers);
+            out.writeInt(entry.body().length);
+            out.write(entry.body());
+        }
+        return buffer.toByteArray();
+    }
+
+    private Entry decode(byte[] value) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(value)))) {
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported cache entry format");
+            }
+            long storedAt = in.readLong();
+            long ttl = in.readLong();
+            byte[] headerBytes = new byte[in.readInt()];
+            in.readFully(headerBytes);
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            HttpHeaders headers = new HttpHeaders();
+            objectMapper.readValue(headerBytes, new TypeReference<Map<String, List<String>>>() { })
+                    .forEach(headers::put);
+            return new Entry(HttpHeaders.readOnlyHttpHeaders(headers), body, storedAt, ttl);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String escapeGlob(String value) {
+        return value.replaceAll("([\\\\*?\\[\\]])", "\\\\$1");
+    }
+}
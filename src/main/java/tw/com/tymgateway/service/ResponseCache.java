@@ -0,0 +1,296 @@
+package tw.com.tymgateway.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.util.ExpiresAtExpiry;
+
+/**
+ * 路由 GET 響應快取
+ *
+ * <p>以 Caffeine（W-TinyLFU 准入 / 淘汰）保存完整的 GET 響應，容量以位元組計算
+ * （{@code gateway.response-cache.max-bytes}），每筆資料依 Cache-Control 決定存活時間。</p>
+ *
+ * <p>快取規則：</p>
+ * <ul>
+ *   <li>只快取 200 響應；{@code no-store} / {@code private} / {@code no-cache} / {@code Set-Cookie} 不快取</li>
+ *   <li>存活時間優先使用 {@code s-maxage}，其次 {@code max-age}，都沒有時使用路由設定的 TTL</li>
+ *   <li>帶 Authorization 的請求只快取明確標示 {@code public} 的響應</li>
+ *   <li>{@code Vary}：記錄每個 URL 的 Vary header 名稱，快取 key 包含這些 header 的值；{@code Vary: *} 不快取</li>
+ * </ul>
+ *
+ * <p>命中率、淘汰數等以 {@code gateway.response.cache.*} 輸出，佔用位元組數為
+ * {@code gateway.response.cache.bytes}。</p>
+ *
+ * <p>啟用 {@link RedisResponseCacheTier} 時，本地未命中會再查 Redis（僅限沒有 Vary 的響應），
+ * 命中後回填本地；寫入與清除也會同步到 Redis。</p>
+ */
+@Service
+public class ResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    /** 每筆資料除了主體之外的估計額外開銷（key、header、物件） */
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+
+    /** 快取時保留的響應 header */
+    private static final List<String> STORED_HEADERS = List.of(
+            HttpHeaders.CONTENT_TYPE,
+            HttpHeaders.CONTENT_ENCODING,
+            HttpHeaders.CONTENT_LANGUAGE,
+            HttpHeaders.CONTENT_DISPOSITION,
+            HttpHeaders.CACHE_CONTROL,
+            HttpHeaders.ETAG,
+            HttpHeaders.LAST_MODIFIED,
+            HttpHeaders.VARY);
+
+    /**
+     * 快取的響應
+     *
+     * @param headers        保留的響應 header
+     * @param body           響應主體
+     * @param storedAtMillis 寫入時間
+     * @param ttlMillis      存活時間
+     */
+    public record CachedResponse(HttpHeaders headers, byte[] body, long storedAtMillis, long ttlMillis) {
+
+        public long ageSeconds() {
+            return Math.max(0, (System.currentTimeMillis() - storedAtMillis) / 1000);
+        }
+
+        public long remainingMillis() {
+            return Math.max(0, expiresAtMillis() - System.currentTimeMillis());
+        }
+
+        long expiresAtMillis() {
+            return storedAtMillis + ttlMillis;
+        }
+
+        int weight() {
+            return body.length + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    private final Cache<String, CachedResponse> cache;
+    private final Cache<String, List<String>> varyIndex;
+    private final RedisResponseCacheTier redisTier;
+    private final int maxEntryBytes;
+
+    public ResponseCache(
+            MeterRegistry meterRegistry,
+            RedisResponseCacheTier redisTier,
+            @Value("${gateway.response-cache.max-bytes:33554432}") long maxBytes,
+            @Value("${gateway.response-cache.max-entry-bytes:1048576}") int maxEntryBytes) {
+        this.redisTier = redisTier;
+        this.maxEntryBytes = maxEntryBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedResponse value) -> value.weight())
+                .expireAfter(new ExpiresAtExpiry<String, CachedResponse>(CachedResponse::expiresAtMillis))
+                .recordStats()
+                .build();
+        this.varyIndex = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.response.cache");
+        Gauge.builder("gateway.response.cache.bytes", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+                .description("響應快取佔用的位元組數（含估計開銷）")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * 查詢快取
+     *
+     * @param request 目前的請求（用於 Vary header）
+     * @param baseKey 不含 Vary 的快取 key
+     * @return 命中的響應；未命中時為 empty
+     */
+    public Mono<CachedResponse> lookup(ServerHttpRequest request, String baseKey) {
+        String key = varyKey(request, baseKey);
+        // 有 Vary 的響應只保存在本地
+        return lookup(key, key.equals(baseKey));
+    }
+
+    /**
+     * 以完整 key 查詢快取（異步代理的讀取結果等不經過 HTTP 快取規則的資料）
+     */
+    public Mono<CachedResponse> lookup(String key) {
+        return lookup(key, true);
+    }
+
+    private Mono<CachedResponse> lookup(String key, boolean shared) {
+        CachedResponse local = cache.getIfPresent(key);
+        if (local != null) {
+            return Mono.just(local);
+        }
+        if (!shared) {
+            return Mono.empty();
+        }
+        return redisTier.get(key)
+                .map(entry -> new CachedResponse(entry.headers(), entry.body(), entry.storedAtMillis(), entry.ttlMillis()))
+                .filter(entry -> entry.remainingMillis() > 0)
+                .doOnNext(entry -> cache.put(key, entry));
+    }
+
+    /**
+     * 以完整 key 寫入快取
+     *
+     * @param key     快取 key
+     * @param headers 要一併回傳的 header
+     * @param body    主體
+     * @param ttl     存活時間
+     */
+    public void store(String key, HttpHeaders headers, byte[] body, Duration ttl) {
+        if (body.length > maxEntryBytes || ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        HttpHeaders readOnly = HttpHeaders.readOnlyHttpHeaders(headers);
+        cache.put(key, new CachedResponse(readOnly, body, System.currentTimeMillis(), ttl.toMillis()));
+        redisTier.put(key, readOnly, body, ttl);
+    }
+
+    /**
+     * 依 Cache-Control 判斷後寫入快取
+     *
+     * @param request         目前的請求
+     * @param baseKey         不含 Vary 的快取 key
+     * @param responseHeaders 後端響應 header
+     * @param body            響應主體
+     * @param defaultTtl      響應沒有指定 max-age 時的存活時間
+     */
+    public void store(ServerHttpRequest request, String baseKey, HttpHeaders responseHeaders, byte[] body,
+            Duration defaultTtl) {
+        Optional<Duration> ttl = cacheTtl(request, responseHeaders, defaultTtl);
+        if (ttl.isEmpty()) {
+            return;
+        }
+        List<String> vary = responseHeaders.getVary();
+        if (vary.contains("*")) {
+            return;
+        }
+        if (vary.isEmpty()) {
+            varyIndex.invalidate(baseKey);
+        } else {
+            varyIndex.put(baseKey, List.copyOf(vary));
+        }
+
+        HttpHeaders kept = new HttpHeaders();
+        for (String name : STORED_HEADERS) {
+            List<String> values = responseHeaders.get(name);
+            if (values != null) {
+                kept.put(name, List.copyOf(values));
+            }
+        }
+        HttpHeaders readOnly = HttpHeaders.readOnlyHttpHeaders(kept);
+        cache.put(varyKey(request, baseKey),
+                new CachedResponse(readOnly, body, System.currentTimeMillis(), ttl.get().toMillis()));
+        if (vary.isEmpty()) {
+            redisTier.put(baseKey, readOnly, body, ttl.get());
+        }
+        logger.debug("響應快取寫入: key={}, bytes={}, ttl={}s", baseKey, body.length, ttl.get().toSeconds());
+    }
+
+    /**
+     * 清除 key 以指定前綴開頭的所有快取（同一模組有寫入操作後呼叫）
+     */
+    public void invalidatePrefix(String prefix) {
+        varyIndex.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        redisTier.invalidatePrefix(prefix);
+    }
+
+    /**
+     * 依請求與響應的 Cache-Control 計算存活時間
+     *
+     * @return 存活時間；不可快取時為 empty
+     */
+    public static Optional<Duration> cacheTtl(ServerHttpRequest request, HttpHeaders responseHeaders, Duration defaultTtl) {
+        if (responseHeaders.containsKey(HttpHeaders.SET_COOKIE)) {
+            return Optional.empty();
+        }
+        Long maxAge = null;
+        Long sharedMaxAge = null;
+        boolean isPublic = false;
+        String cacheControl = responseHeaders.getCacheControl();
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                String value = directive.trim().toLowerCase(Locale.ROOT);
+                if (value.equals("no-store") || value.equals("private") || value.equals("no-cache")) {
+                    return Optional.empty();
+                }
+                if (value.equals("public")) {
+                    isPublic = true;
+                } else if (value.startsWith("s-maxage=")) {
+                    sharedMaxAge = parseSeconds(value.substring("s-maxage=".length()));
+                } else if (value.startsWith("max-age=")) {
+                    maxAge = parseSeconds(value.substring("max-age=".length()));
+                }
+            }
+        }
+        if (request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION) && !isPublic) {
+            return Optional.empty();
+        }
+        Long seconds = sharedMaxAge != null ? sharedMaxAge : maxAge;
+        Duration ttl = seconds != null ? Duration.ofSeconds(seconds) : defaultTtl;
+        return ttl.isZero() || ttl.isNegative() ? Optional.empty() : Optional.of(ttl);
+    }
+
+    /**
+     * 請求是否要求略過快取（{@code Cache-Control: no-cache / no-store}、{@code Pragma: no-cache}）
+     */
+    public static boolean bypassRequested(ServerHttpRequest request) {
+        List<String> cacheControl = request.getHeaders().getOrEmpty(HttpHeaders.CACHE_CONTROL);
+        for (String value : cacheControl) {
+            String lower = value.toLowerCase(Locale.ROOT);
+            if (lower.contains("no-cache") || lower.contains("no-store")) {
+                return true;
+            }
+        }
+        return request.getHeaders().getOrEmpty(HttpHeaders.PRAGMA).contains("no-cache");
+    }
+
+    private String varyKey(ServerHttpRequest request, String baseKey) {
+        List<String> vary = varyIndex.getIfPresent(baseKey);
+        if (vary == null || vary.isEmpty()) {
+            return baseKey;
+        }
+        List<String> parts = new ArrayList<>(vary.size() + 1);
+        parts.add(baseKey);
+        for (String name : vary) {
+            parts.add(name.toLowerCase(Locale.ROOT) + "=" + String.join(",", request.getHeaders().getOrEmpty(name)));
+        }
+        return String.join("|", parts);
+    }
+
+    private static Long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package tw.com.tymgateway.service;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.util.HashUtil;
+
+/**
+ * 最後一次成功讀取結果的暫存區（stale-while-revalidate）
+ *
+ * <p>記錄冪等讀取（武器列表、角色名稱、圖庫列表等）最後一次成功的響應。
+ * 後端或 Consumer 降級（熔斷開啟、截止時間已過）時，改以暫存資料回應並附上
+ * {@code Warning} / {@code Age} header，同時在背景重新驗證。</p>
+ *
+ * <p>以存取順序的 LRU 控制容量，超過 {@code gateway.stale-cache.max-age} 的資料不再提供。</p>
+ *
+ * <p>帶 {@code Authorization} 的請求以 token 的 SHA-256 區分 key（見 {@link #scopedKey}），
+ * 不會把某個使用者的資料回給另一個使用者。響應帶 {@code Vary} 時一併記錄對應的請求 header，
+ * 取用時必須相符；{@code Vary: *} 不暫存。</p>
+ */
+@Service
+public class StaleResponseStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(StaleResponseStore.class);
+
+    /** RFC 7234 Warning 110：Response is Stale */
+    private static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+    /**
+     * 暫存的響應
+     *
+     * @param body          響應主體（異步代理為反序列化後的物件，路由為原始 byte[]）
+     * @param headers       需要一併回傳的 header（Content-Type 等）
+     * @param revalidateUri 路由響應的後端絕對 URI，用於背景重新驗證（異步代理為 null）
+     * @param varyValues    響應 {@code Vary} 列出的請求 header 在記錄當時的值
+     * @param storedAt      記錄時間
+     */
+    public record Entry(Object body, HttpHeaders headers, URI revalidateUri,
+            Map<String, List<String>> varyValues, Instant storedAt) {
+
+        public long ageSeconds() {
+            return Math.max(0, Duration.between(storedAt, Instant.now()).toSeconds());
+        }
+    }
+
+    private final WebClient backendWebClient;
+    private final Duration maxAge;
+    private final Map<String, Entry> entries;
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    private final Counter servedCounter;
+    private final Counter revalidationFailedCounter;
+
+    public StaleResponseStore(
+            WebClient backendWebClient,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.stale-cache.max-entries:500}") int maxEntries,
+            @Value("${gateway.stale-cache.max-age-seconds:3600}") long maxAgeSeconds) {
+        this.backendWebClient = backendWebClient;
+        this.maxAge = Duration.ofSeconds(maxAgeSeconds);
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+
+        Gauge.builder("gateway.stale.entries", entries, Map::size)
+                .description("stale-while-revalidate 暫存的響應數")
+                .register(meterRegistry);
+        this.servedCounter = Counter.builder("gateway.stale.served")
+                .description("以暫存資料回應的降級讀取次數")
+                .register(meterRegistry);
+        this.revalidationFailedCounter = Counter.builder("gateway.stale.revalidation.failed")
+                .description("背景重新驗證失敗次數")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 記錄最後一次成功的響應
+     *
+     * @param key            暫存 key（帶 Authorization 的請求應先經過 {@link #scopedKey}）
+     * @param body           響應主體
+     * @param headers        後端響應 header
+     * @param revalidateUri  路由響應的後端絕對 URI（異步代理為 null）
+     * @param requestHeaders 原始請求 header，用於記錄 {@code Vary} 對應的值
+     */
+    public void put(String key, Object body, HttpHeaders headers, URI revalidateUri, HttpHeaders requestHeaders) {
+        if (body == null) {
+            return;
+        }
+        HttpHeaders kept = new HttpHeaders();
+        Map<String, List<String>> varyValues = Map.of();
+        if (headers != null) {
+            if (headers.getContentType() != null) {
+                kept.setContentType(headers.getContentType());
+            }
+            List<String> vary = headers.getVary();
+            if (vary.contains("*")) {
+                // 每個請求都可能不同，無法安全地重複使用
+                entries.remove(key);
+                return;
+            }
+            if (!vary.isEmpty()) {
+                kept.setVary(vary);
+                varyValues = varyValues(vary, requestHeaders);
+            }
+        }
+        entries.put(key, new Entry(body, kept, revalidateUri, varyValues, Instant.now()));
+    }
+
+    /**
+     * 取得仍在可用期限內、且 {@code Vary} header 與目前請求相符的暫存響應
+     *
+     * @param key            暫存 key
+     * @param requestHeaders 目前的請求 header
+     */
+    public Optional<Entry> get(String key, HttpHeaders requestHeaders) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (Duration.between(entry.storedAt(), Instant.now()).compareTo(maxAge) > 0) {
+            entries.remove(key);
+            return Optional.empty();
+        }
+        if (!entry.varyValues().isEmpty()
+                && !entry.varyValues().equals(varyValues(entry.varyValues().keySet(), requestHeaders))) {
+            return Optional.empty();
+        }
+        return Optional.of(entry);
+    }
+
+    /**
+     * 記錄一次以暫存資料回應的降級讀取（於實際回應暫存資料處呼叫）
+     */
+    public void recordServed() {
+        servedCounter.increment();
+    }
+
+    /**
+     * 組合回傳暫存資料時的 header：保留原始 Content-Type / Vary，並加上 Warning 與 Age
+     */
+    public HttpHeaders staleHeaders(Entry entry) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(entry.headers());
+        headers.set(HttpHeaders.WARNING, STALE_WARNING);
+        headers.set(HttpHeaders.AGE, String.valueOf(entry.ageSeconds()));
+        return headers;
+    }
+
+    /**
+     * 背景重新驗證；同一個 key 同時只會有一個重新驗證在進行
+     *
+     * @param key     暫存 key
+     * @param refresh 重新取得資料的流程（成功時應自行呼叫 {@link #put}）
+     */
+    public void revalidate(String key, Mono<?> refresh) {
+        if (!revalidating.add(key)) {
+            return;
+        }
+        refresh.doFinally(signal -> revalidating.remove(key))
+                .subscribe(
+                        result -> logger.debug("背景重新驗證完成: key={}", key),
+                        error -> {
+                            revalidationFailedCounter.increment();
+                            logger.debug("背景重新驗證失敗: key={}, error={}", key, error.getMessage());
+                        });
+    }
+
+    /**
+     * 以後端絕對 URI 重新驗證路由響應
+     *
+     * <p>帶上目前請求的 {@code Authorization} 與 {@code Vary} 列出的 header，
+     * 讓後端回應與原始請求相同的內容。</p>
+     *
+     * @param key            暫存 key
+     * @param entry          目前的暫存響應
+     * @param requestHeaders 觸發降級的請求 header
+     */
+    public void revalidateRoute(String key, Entry entry, HttpHeaders requestHeaders) {
+        if (entry.revalidateUri() == null) {
+            return;
+        }
+        HttpHeaders forwarded = new HttpHeaders();
+        copyHeader(requestHeaders, forwarded, HttpHeaders.AUTHORIZATION);
+        entry.varyValues().keySet().forEach(name -> copyHeader(requestHeaders, forwarded, name));
+        Mono<Void> refresh = backendWebClient.get()
+                .uri(entry.revalidateUri())
+                .headers(headers -> headers.addAll(forwarded))
+                .exchangeToMono(response -> {
+                    if (!response.statusCode().is2xxSuccessful()) {
+                        return response.releaseBody()
+                                .then(Mono.error(new IllegalStateException("HTTP " + response.statusCode())));
+                    }
+                    HttpHeaders headers = response.headers().asHttpHeaders();
+                    return DataBufferUtils.join(response.body(BodyExtractors.toDataBuffers()))
+                            .map(buffer -> {
+                                byte[] bytes = new byte[buffer.readableByteCount()];
+                                buffer.read(bytes);
+                                DataBufferUtils.release(buffer);
+                                return bytes;
+                            })
+                            .doOnNext(bytes -> put(key, bytes, headers, entry.revalidateUri(), forwarded))
+                            .then();
+                });
+        revalidate(key, refresh);
+    }
+
+    /**
+     * 路由請求的暫存 key：使用客戶端原始 URL（RewritePath / 熔斷轉址之前），並依 Authorization 區分
+     */
+    public static String routeKey(ServerWebExchange exchange) {
+        URI uri = exchange.getRequest().getURI();
+        LinkedHashSet<URI> originalUrls = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR);
+        if (originalUrls != null && !originalUrls.isEmpty()) {
+            uri = originalUrls.iterator().next();
+        }
+        String key = "route:" + exchange.getRequest().getMethod() + " " + uri.getRawPath()
+                + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        return scopedKey(key, exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+    }
+
+    /**
+     * 依 Authorization 區分暫存 key；沒有 Authorization 時維持原 key（所有匿名請求共用）
+     *
+     * @param key           不含身分的暫存 key
+     * @param authorization Authorization header，可為 null
+     * @return 暫存 key
+     */
+    public static String scopedKey(String key, String authorization) {
+        if (authorization == null || authorization.isBlank()) {
+            return key;
+        }
+        return key + " auth:" + HashUtil.sha256(authorization);
+    }
+
+    private static Map<String, List<String>> varyValues(Collection<String> names, HttpHeaders requestHeaders) {
+        Map<String, List<String>> values = new TreeMap<>();
+        for (String name : names) {
+            List<String> requestValues = requestHeaders != null ? requestHeaders.get(name) : null;
+            values.put(name.toLowerCase(Locale.ROOT), requestValues != null ? List.copyOf(requestValues) : List.of());
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    private static void copyHeader(HttpHeaders source, HttpHeaders target, String name) {
+        List<String> values = source != null ? source.get(name) : null;
+        if (values != null) {
+            target.put(name, values);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package tw.com.tymgateway.service;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.Http11SslContextSpec;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * 啟動預熱
+ *
+ * <p>應用程式啟動完成後依序執行，全部完成（或超過 {@code max-duration-seconds}）前 readiness
+ * 探針回報 OUT_OF_SERVICE，避免滾動更新後第一批使用者承擔冷啟動成本：</p>
+ * <ol>
+ *   <li>建立後端連線：對每個後端實例同時送出 {@code backend-connections} 個健康檢查請求，讓連線池預先建好連線</li>
+ *   <li>建立 Keycloak 連線並預先取得 JWKS（{@link JwksManager}）</li>
+ *   <li>對本機呼叫 {@code paths}（角色名稱、武器列表等），填入響應快取</li>
+ *   <li>重複呼叫同一批路徑 {@code jit-iterations} 次並解析 / 序列化 JSON，讓熱路徑完成 JIT 編譯</li>
+ * </ol>
+ *
+ * <p>對本機的請求帶有隨機 token（{@link #isWarmupRequest}），不計入限流，才能真正走到熱路徑。</p>
+ *
+ * <p>任何一步失敗只記錄警告，不會讓 Gateway 無法就緒。預熱狀態以 {@code warmup} 健康指標輸出，
+ * 並加入 readiness 群組。</p>
+ */
+@Service("warmup")
+public class StartupWarmupService implements HealthIndicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupWarmupService.class);
+
+    /** 對本機的預熱請求帶的 header，值為每次啟動隨機產生，客戶端無法預先得知 */
+    private static final String WARMUP_HEADER = "X-Gateway-Warmup";
+
+    private final String warmupToken = UUID.randomUUID().toString();
+
+    private final BackendInstanceSelector backendInstanceSelector;
+    private final JwksManager jwksManager;
+    private final ObjectMapper objectMapper;
+    private final Environment environment;
+    private final WebClient backendClient;
+    private final WebClient keycloakClient;
+
+    @Value("${gateway.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gateway.warmup.max-duration-seconds:60}")
+    private long maxDurationSeconds;
+
+    @Value("${gateway.warmup.request-timeout-seconds:10}")
+    private long requestTimeoutSeconds;
+
+    @Value("${gateway.warmup.backend-health-path:/tymb/actuator/health}")
+    private String backendHealthPath;
+
+    @Value("${gateway.warmup.backend-connections:4}")
+    private int backendConnections;
+
+    @Value("${gateway.warmup.keycloak-connections:2}")
+    private int keycloakConnections;
+
+    @Value("${gateway.warmup.paths:/tymg/people/names,/tymg/weapons}")
+    private String paths;
+
+    @Value("${gateway.warmup.jit-iterations:200}")
+    private int jitIterations;
+
+    @Value("${gateway.warmup.jit-concurrency:4}")
+    private int jitConcurrency;
+
+    @Value("${keycloak.auth-server-url}")
+    private String keycloakAuthServerUrl;
+
+    @Value("${keycloak.realm}")
+    private String keycloakRealm;
+
+    @Value("${server.ssl.enabled:false}")
+    private boolean sslEnabled;
+
+    private volatile String phase = "pending";
+    private volatile boolean completed;
+    private volatile long durationMillis;
+
+    public StartupWarmupService(
+            BackendInstanceSelector backendInstanceSelector,
+            JwksManager jwksManager,
+            ObjectMapper objectMapper,
+            Environment environment,
+            HttpClient backendHttpClient,
+            @Qualifier("keycloakWebClient") WebClient keycloakWebClient) {
+        this.backendInstanceSelector = backendInstanceSelector;
+        this.jwksManager = jwksManager;
+        this.objectMapper = objectMapper;
+        this.environment = environment;
+        this.backendClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(backendHttpClient))
+                .build();
+        this.keycloakClient = keycloakWebClient;
+    }
+
+    /**
+     * 是否為本服務送出的預熱請求（來自本機且帶有本次啟動的 token），限流等保護機制應略過
+     *
+     * @param request 目前的請求
+     * @return 是否為預熱請求
+     */
+    public boolean isWarmupRequest(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return remoteAddress != null
+                && remoteAddress.getAddress() != null
+                && remoteAddress.getAddress().isLoopbackAddress()
+                && warmupToken.equals(request.getHeaders().getFirst(WARMUP_HEADER));
+    }
+
+    @Override
+    public Health health() {
+        if (completed) {
+            return Health.up().withDetail("durationMs", durationMillis).build();
+        }
+        return Health.outOfService().withDetail("phase", phase).build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            completed = true;
+            return;
+        }
+        long start = System.currentTimeMillis();
+        logger.info("開始啟動預熱: paths={}, jitIterations={}", paths, jitIterations);
+        step("connections", Mono.when(preconnectBackend(), preconnectKeycloak()))
+                .then(step("caches", populateCaches()))
+                .then(step("jit", exerciseHotPaths()))
+                .timeout(Duration.ofSeconds(maxDurationSeconds))
+                .onErrorResume(error -> {
+                    logger.warn("啟動預熱未在 {}s 內完成，停止預熱: phase={}", maxDurationSeconds, phase);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    durationMillis = System.currentTimeMillis() - start;
+                    phase = "done";
+                    completed = true;
+                    logger.info("啟動預熱完成: {}ms", durationMillis);
+                })
+                .subscribe();
+    }
+
+    private Mono<Void> step(String name, Mono<Void> work) {
+        return Mono.defer(() -> {
+            phase = name;
+            long start = System.currentTimeMillis();
+            return work
+                    .doOnSuccess(ignored -> logger.info("預熱步驟完成: step={}, {}ms", name,
+                            System.currentTimeMillis() - start))
+                    .onErrorResume(error -> {
+                        logger.warn("預熱步驟失敗: step={}, error={}", name, error.toString());
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    /**
+     * 對每個後端實例同時送出多個請求，使連線池建立對應數量的連線（含 TLS 握手）
+     */
+    private Mono<Void> preconnectBackend() {
+        List<URI> instances = backendInstanceSelector.getInstanceUris();
+        int perInstance = Math.max(1, backendConnections);
+        return Flux.fromIterable(instances)
+                .flatMap(instance -> Flux.range(0, perInstance)
+                        .flatMap(i -> ping(backendClient, instance.toString() + backendHealthPath), perInstance))
+                .then();
+    }
+
+    /**
+     * 取得 JWKS，並以 OIDC discovery 端點建立其餘的 Keycloak 連線
+     */
+    private Mono<Void> preconnectKeycloak() {
+        String discoveryUri = keycloakAuthServerUrl + "/realms/" + keycloakRealm + "/.well-known/openid-configuration";
+        int extra = Math.max(0, keycloakConnections - 1);
+        return Mono.when(
+                jwksManager.refresh(),
+                Flux.range(0, extra).flatMap(i -> ping(keycloakClient, discoveryUri), Math.max(1, extra)));
+    }
+
+    private Mono<Void> ping(WebClient client, String uri) {
+        return client.get()
+                .uri(uri)
+                .retrieve()
+                .toBodilessEntity()
+                .timeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .then()
+                .onErrorResume(error -> {
+                    logger.debug("預熱連線失敗: uri={}, error={}", uri, error.toString());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 經由 Gateway 本身呼叫讀取端點，走完整的過濾器鏈並寫入響應快取
+     */
+    private Mono<Void> populateCaches() {
+        WebClient self = selfClient();
+        return Flux.fromIterable(warmupPaths())
+                .flatMap(path -> fetchSelf(self, path))
+                .then();
+    }
+
+    /**
+     * 重複呼叫讀取端點（此時多為快取命中），並解析與序列化回傳的 JSON
+     */
+    private Mono<Void> exerciseHotPaths() {
+        List<String> targets = warmupPaths();
+        if (targets.isEmpty() || jitIterations <= 0) {
+            return Mono.empty();
+        }
+        WebClient self = selfClient();
+        return Flux.range(0, jitIterations)
+                .flatMap(i -> fetchSelf(self, targets.get(i % targets.size())), Math.max(1, jitConcurrency))
+                .doOnNext(this::roundTripJson)
+                .then();
+    }
+
+    private Mono<byte[]> fetchSelf(WebClient self, String path) {
+        return self.get()
+                .uri(path)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .timeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .onErrorResume(error -> {
+                    logger.debug("預熱請求失敗: path={}, error={}", path, error.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private void roundTripJson(byte[] body) {
+        try {
+            JsonNode node = objectMapper.readTree(body);
+            objectMapper.writeValueAsBytes(node);
+        } catch (Exception e) {
+            // 非 JSON 響應不影響預熱
+        }
+    }
+
+    private WebClient selfClient() {
+        int port = environment.getProperty("local.server.port", Integer.class,
+                environment.getProperty("server.port", Integer.class, 8082));
+        HttpClient httpClient = HttpClient.create();
+        if (sslEnabled) {
+            // 只連線到本機，略過自簽憑證驗證
+            httpClient = httpClient.secure(spec -> spec.sslContext(Http11SslContextSpec.forClient()
+                    .configure(builder -> builder.trustManager(InsecureTrustManagerFactory.INSTANCE))));
+        }
+        return WebClient.builder()
+                .baseUrl((sslEnabled ? "https" : "http") + "://localhost:" + port)
+                .defaultHeader(WARMUP_HEADER, warmupToken)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    private List<String> warmupPaths() {
+        return Arrays.stream(paths.split(","))
+                .map(String::trim)
+                .filter(path -> !path.isEmpty())
+                .toList();
+    }
+}
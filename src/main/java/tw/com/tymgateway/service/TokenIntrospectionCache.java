@@ -0,0 +1,222 @@
+package tw.com.tymgateway.service;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.util.ExpiresAtExpiry;
+import tw.com.tymgateway.util.HashUtil;
+
+/**
+ * Token introspection 快取與本地驗證
+ *
+ * <p>{@code /tymg/keycloak/introspect} 的快速路徑：</p>
+ * <ol>
+ *   <li>以 access token 的 SHA-256 查詢快取，命中且距離到期超過 {@code near-expiry-seconds} 時直接回傳</li>
+ *   <li>未命中時以 {@code SecurityConfig.reactiveJwtDecoder}（JWKS 已快取）在本地驗證簽章與期限，
+ *       通過後組成與 Keycloak introspection 相同格式的結果並寫入快取</li>
+ *   <li>本地驗證失敗或 token 即將到期時回傳 empty，由呼叫端向 Keycloak 查詢</li>
+ * </ol>
+ *
+ * <p>撤銷：經由 {@code /tymg/keycloak/logout} 登出時，{@link KeycloakLogoutQueue} 以 {@link #revokeSession}
+ * 記錄 refresh token / id token 的 session id（{@code sid}），保留 {@code revocation-ttl-seconds}。
+ * 屬於該 session 的 token 不再使用快取與本地驗證，一律交給 Keycloak 判斷（與未啟用快速路徑時相同）。
+ * 直接在 Keycloak 後台終止的 session 無法在本地得知，需要即時反映時關閉 {@code local-validation}。</p>
+ *
+ * <p>快取保留到 token 的 {@code exp}；{@code max-ttl-seconds} 只在關閉 {@code local-validation}
+ * 時縮短 Keycloak 結果的保留時間（開啟時到期後會立即以本地驗證重新寫入）。</p>
+ */
+@Service
+public class TokenIntrospectionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenIntrospectionCache.class);
+
+    private record Entry(Map<String, Object> result, long expiresAtMillis) {
+    }
+
+    private static final String[] SESSION_CLAIMS = {"sid", "session_state"};
+
+    private final ReactiveJwtDecoder jwtDecoder;
+    private final Cache<String, Entry> cache;
+    private final Cache<String, Boolean> revokedSessions;
+    private final boolean localValidation;
+    private final long nearExpiryMillis;
+    private final long maxTtlMillis;
+
+    private final Counter cacheHits;
+    private final Counter localHits;
+    private final Counter remoteLookups;
+
+    public TokenIntrospectionCache(
+            ReactiveJwtDecoder jwtDecoder,
+            MeterRegistry meterRegistry,
+            @Value("${gateway.keycloak.introspection.local-validation:true}") boolean localValidation,
+            @Value("${gateway.keycloak.introspection.max-entries:10000}") long maxEntries,
+            @Value("${gateway.keycloak.introspection.near-expiry-seconds:30}") long nearExpirySeconds,
+            @Value("${gateway.keycloak.introspection.max-ttl-seconds:0}") long maxTtlSeconds,
+            @Value("${gateway.keycloak.introspection.revocation-ttl-seconds:3600}") long revocationTtlSeconds) {
+        this.jwtDecoder = jwtDecoder;
+        this.localValidation = localValidation;
+        this.nearExpiryMillis = Duration.ofSeconds(nearExpirySeconds).toMillis();
+        this.maxTtlMillis = Duration.ofSeconds(maxTtlSeconds).toMillis();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new ExpiresAtExpiry<String, Entry>(Entry::expiresAtMillis))
+                .recordStats()
+                .build();
+        this.revokedSessions = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(revocationTtlSeconds))
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.keycloak.introspection.cache");
+        this.cacheHits = Counter.builder("gateway.keycloak.introspection").tag("source", "cache")
+                .description("Token introspection 的結果來源").register(meterRegistry);
+        this.localHits = Counter.builder("gateway.keycloak.introspection").tag("source", "local")
+                .description("Token introspection 的結果來源").register(meterRegistry);
+        this.remoteLookups = Counter.builder("gateway.keycloak.introspection").tag("source", "keycloak")
+                .description("Token introspection 的結果來源").register(meterRegistry);
+    }
+
+    /**
+     * 以快取或本地驗證取得 introspection 結果
+     *
+     * @param token access token
+     * @return 有效 token 的結果；需要向 Keycloak 查詢時為 empty
+     */
+    public Mono<Map<String, Object>> lookup(String token) {
+        String key = HashUtil.sha256(token);
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && isRevoked(entry.result())) {
+            cache.invalidate(key);
+            entry = null;
+        }
+        if (entry != null && expiresAtMillis(entry.result()) - System.currentTimeMillis() > nearExpiryMillis) {
+            cacheHits.increment();
+            return Mono.just(entry.result());
+        }
+        if (!localValidation) {
+            remoteLookups.increment();
+            return Mono.empty();
+        }
+        return jwtDecoder.decode(token)
+                .map(TokenIntrospectionCache::toIntrospectionResult)
+                .filter(result -> !isRevoked(result))
+                .filter(result -> expiresAtMillis(result) - System.currentTimeMillis() > nearExpiryMillis)
+                .doOnNext(result -> {
+                    localHits.increment();
+                    put(key, result);
+                })
+                .onErrorResume(error -> {
+                    // 簽章不符、過期、kid 不存在等：交給 Keycloak 判斷
+                    logger.debug("Token 本地驗證未通過: {}", error.getMessage());
+                    return Mono.empty();
+                })
+                .switchIfEmpty(Mono.fromRunnable(remoteLookups::increment));
+    }
+
+    /**
+     * 寫入 Keycloak 回傳的 introspection 結果（只保存 active 且帶 exp 的結果）
+     *
+     * <p>已撤銷 session 的結果不保存：背景登出尚未送達 Keycloak 前，Keycloak 仍可能回傳 active。</p>
+     */
+    public void store(String token, Map<String, Object> result) {
+        if (Boolean.TRUE.equals(result.get("active")) && result.get("exp") instanceof Number && !isRevoked(result)) {
+            put(HashUtil.sha256(token), result);
+        }
+    }
+
+    /**
+     * 記錄已登出的 session（登出時以 refresh token 或 id token 呼叫）
+     *
+     * <p>只讀取 token 的 {@code sid} 而不驗證簽章；撤銷的效果僅是改向 Keycloak 查詢，
+     * 偽造的 token 無法讓其他人的 token 被判定為無效。</p>
+     *
+     * @param token refresh token 或 id token，可為 null
+     */
+    public void revokeSession(String token) {
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        try {
+            JWTClaimsSet claims = JWTParser.parse(token).getJWTClaimsSet();
+            for (String claim : SESSION_CLAIMS) {
+                String sessionId = claims.getStringClaim(claim);
+                if (sessionId != null && !sessionId.isEmpty()) {
+                    revokedSessions.put(sessionId, Boolean.TRUE);
+                    return;
+                }
+            }
+        } catch (ParseException e) {
+            logger.debug("無法從登出 token 取得 session id: {}", e.getMessage());
+        }
+    }
+
+    private boolean isRevoked(Map<String, Object> result) {
+        for (String claim : SESSION_CLAIMS) {
+            if (result.get(claim) instanceof String sessionId) {
+                return revokedSessions.getIfPresent(sessionId) != null;
+            }
+        }
+        return false;
+    }
+
+    private void put(String key, Map<String, Object> result) {
+        long expiresAt = expiresAtMillis(result);
+        if (maxTtlMillis > 0) {
+            expiresAt = Math.min(expiresAt, System.currentTimeMillis() + maxTtlMillis);
+        }
+        if (expiresAt > System.currentTimeMillis()) {
+            cache.put(key, new Entry(Collections.unmodifiableMap(new LinkedHashMap<>(result)), expiresAt));
+        }
+    }
+
+    private static long expiresAtMillis(Map<String, Object> result) {
+        return result.get("exp") instanceof Number exp ? exp.longValue() * 1000 : 0;
+    }
+
+    /**
+     * 以 JWT claims 組成 RFC 7662 格式的結果（欄位與 Keycloak introspection 一致）
+     */
+    private static Map<String, Object> toIntrospectionResult(Jwt jwt) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("active", true);
+        Map<String, Object> claims = jwt.getClaims();
+        claims.forEach((name, value) -> {
+            if (value instanceof Instant instant) {
+                result.put(name, instant.getEpochSecond());
+            } else if (value instanceof java.net.URL url) {
+                result.put(name, url.toString());
+            } else if (value != null) {
+                result.put(name, value);
+            }
+        });
+        if (claims.get("azp") != null) {
+            result.put("client_id", claims.get("azp"));
+        }
+        if (claims.get("preferred_username") != null) {
+            result.put("username", claims.get("preferred_username"));
+        }
+        result.putIfAbsent("token_type", "Bearer");
+        return result;
+    }
+}
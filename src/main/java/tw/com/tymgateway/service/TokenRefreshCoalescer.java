@@ -0,0 +1,108 @@
+package tw.com.tymgateway.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import tw.com.tymgateway.util.HashUtil;
+
+/**
+ * Refresh token 請求合併（single-flight）
+ *
+ * <p>多個分頁或並行請求同時以同一個 refresh token 續期時，只送出一個 {@code refresh_token} grant，
+ * 其餘請求等待並共用結果。Keycloak 啟用 refresh token rotation 時，舊的 refresh token 只能使用一次，
+ * 不合併的話除了第一個請求之外都會失敗並被登出。</p>
+ *
+ * <p>成功的結果以 refresh token 的 SHA-256 為 key 保留 {@code hold-seconds}，
+ * 稍晚才帶著舊 refresh token 抵達的請求也會拿到同一組新 token。失敗不保留。
+ * 登出時以 {@link #invalidate} 清除，之後重送同一個 refresh token 會再送往 Keycloak（並被拒絕）。</p>
+ */
+@Service
+public class TokenRefreshCoalescer {
+
+    private final Map<String, Mono<Map<String, Object>>> inflight = new ConcurrentHashMap<>();
+    private final Cache<String, Map<String, Object>> recent;
+
+    private final Counter grants;
+    private final Counter coalesced;
+    private final Counter held;
+
+    public TokenRefreshCoalescer(
+            MeterRegistry meterRegistry,
+            @Value("${gateway.keycloak.refresh.hold-seconds:10}") long holdSeconds,
+            @Value("${gateway.keycloak.refresh.max-held-entries:10000}") long maxHeldEntries) {
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(maxHeldEntries)
+                .expireAfterWrite(Duration.ofSeconds(holdSeconds))
+                .build();
+        this.grants = Counter.builder("gateway.keycloak.refresh").tag("result", "grant")
+                .description("Token 續期請求的處理方式").register(meterRegistry);
+        this.coalesced = Counter.builder("gateway.keycloak.refresh").tag("result", "coalesced")
+                .description("Token 續期請求的處理方式").register(meterRegistry);
+        this.held = Counter.builder("gateway.keycloak.refresh").tag("result", "held")
+                .description("Token 續期請求的處理方式").register(meterRegistry);
+    }
+
+    /**
+     * 以 refresh token 續期；同一個 refresh token 同時只會呼叫一次 {@code grant}
+     *
+     * @param refreshToken refresh token
+     * @param grant        實際向 Keycloak 送出 refresh_token grant 的呼叫
+     * @return Keycloak 回傳的 token 響應（與其他等待者共用）
+     */
+    public Mono<Map<String, Object>> refresh(String refreshToken, Supplier<Mono<Map<String, Object>>> grant) {
+        String key = HashUtil.sha256(refreshToken);
+        Map<String, Object> recentResult = recent.getIfPresent(key);
+        if (recentResult != null) {
+            held.increment();
+            return Mono.just(recentResult);
+        }
+        boolean[] created = new boolean[1];
+        Mono<Map<String, Object>> shared = inflight.computeIfAbsent(key, k -> {
+            created[0] = true;
+            AtomicReference<Mono<Map<String, Object>>> self = new AtomicReference<>();
+            Mono<Map<String, Object>> call = Mono.defer(grant)
+                    .doOnNext(result -> {
+                        // 進行中被 invalidate 時不保留結果
+                        if (inflight.get(k) == self.get()) {
+                            recent.put(k, result);
+                        }
+                    })
+                    .doFinally(signal -> inflight.remove(k, self.get()))
+                    .cache();
+            self.set(call);
+            return call;
+        });
+        if (created[0]) {
+            grants.increment();
+        } else {
+            coalesced.increment();
+        }
+        return shared;
+    }
+
+    /**
+     * 清除 refresh token 保留的結果與進行中的續期（登出時呼叫）
+     *
+     * @param refreshToken refresh token，可為 null
+     */
+    public void invalidate(String refreshToken) {
+        if (refreshToken == null || refreshToken.isBlank()) {
+            return;
+        }
+        String key = HashUtil.sha256(refreshToken);
+        recent.invalidate(key);
+        inflight.remove(key);
+    }
+}
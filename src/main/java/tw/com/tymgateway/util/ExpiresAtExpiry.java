@@ -0,0 +1,49 @@
+package tw.com.tymgateway.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/**
+ * 依值本身的到期時間決定保留期限的 Caffeine {@link Expiry}
+ *
+ * <p>寫入與更新時保留到 {@code expiresAtMillis} 回傳的時間（epoch 毫秒），已過期的值立即失效；
+ * 讀取不延長期限。用於以 token {@code exp} 為期限的快取。</p>
+ *
+ * @param <K> 快取 key
+ * @param <V> 快取值
+ * @author TY Team
+ * @version 1.0
+ */
+public final class ExpiresAtExpiry<K, V> implements Expiry<K, V> {
+
+    private final ToLongFunction<V> expiresAtMillis;
+
+    /**
+     * @param expiresAtMillis 取得值的到期時間（epoch 毫秒）；沒有到期時間時應回傳 0
+     */
+    public ExpiresAtExpiry(ToLongFunction<V> expiresAtMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    @Override
+    public long expireAfterCreate(K key, V value, long currentTime) {
+        return remainingNanos(value);
+    }
+
+    @Override
+    public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return remainingNanos(value);
+    }
+
+    @Override
+    public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    private long remainingNanos(V value) {
+        long remainingMillis = expiresAtMillis.applyAsLong(value) - System.currentTimeMillis();
+        return remainingMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(remainingMillis) : 0;
+    }
+}
@@ -0,0 +1,66 @@
+package tw.com.tymgateway.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 雜湊工具類
+ *
+ * <p>token 不以原文作為快取 key 或寫入日誌，一律先轉成 SHA-256（十六進位小寫）。</p>
+ *
+ * @author TY Team
+ * @version 1.0
+ */
+public final class HashUtil {
+
+    private HashUtil() {
+    }
+
+    /**
+     * 計算字串（UTF-8）的 SHA-256
+     *
+     * @param value 原始字串，例如 access token 或 refresh token
+     * @return 64 字元的十六進位字串
+     */
+    public static String sha256(String value) {
+        return sha256(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 計算位元組內容的 SHA-256
+     *
+     * @param value 原始內容
+     * @return 64 字元的十六進位字串
+     */
+    public static String sha256(byte[] value) {
+        MessageDigest digest = newSha256();
+        digest.update(value);
+        return toHex(digest);
+    }
+
+    /**
+     * 建立 SHA-256 的 {@link MessageDigest}，用於分段計算（例如串流寫入的內容）
+     *
+     * @return 新的 MessageDigest
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 所有 JVM 都必須支援 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 完成計算並以十六進位輸出
+     *
+     * @param digest 已餵入內容的 MessageDigest
+     * @return 十六進位字串
+     */
+    public static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
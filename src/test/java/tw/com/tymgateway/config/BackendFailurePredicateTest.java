@@ -0,0 +1,60 @@
+package tw.com.tymgateway.config;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 後端故障判斷測試
+ */
+class BackendFailurePredicateTest {
+
+    private final BackendFailurePredicate predicate = new BackendFailurePredicate();
+
+    @Test
+    void circuitBreakerStatusCodeExceptionCountsWhen5xx() {
+        assertTrue(predicate.test(circuitBreakerStatus(HttpStatus.SERVICE_UNAVAILABLE)));
+        assertTrue(predicate.test(circuitBreakerStatus(HttpStatus.BAD_GATEWAY)));
+        assertFalse(predicate.test(circuitBreakerStatus(HttpStatus.NOT_FOUND)));
+    }
+
+    @Test
+    void webClientResponseExceptionCountsOnly5xx() {
+        assertTrue(predicate.test(WebClientResponseException.create(500, "Internal Server Error", null, null, null)));
+        assertFalse(predicate.test(WebClientResponseException.create(400, "Bad Request", null, null, null)));
+        assertFalse(predicate.test(WebClientResponseException.create(404, "Not Found", null, null, null)));
+    }
+
+    @Test
+    void responseStatusExceptionCountsOnly5xx() {
+        assertTrue(predicate.test(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT)));
+        assertFalse(predicate.test(new ResponseStatusException(HttpStatus.UNAUTHORIZED)));
+    }
+
+    @Test
+    void wrappedTimeoutCounts() {
+        assertTrue(predicate.test(new RuntimeException("async wait", new TimeoutException("timed out"))));
+    }
+
+    @Test
+    void unrelatedExceptionDoesNotCount() {
+        assertFalse(predicate.test(new IllegalArgumentException("bad input")));
+        assertFalse(predicate.test(new RuntimeException(new IllegalArgumentException("bad input"))));
+    }
+
+    /**
+     * 與 SpringCloudCircuitBreakerFilterFactory.CircuitBreakerStatusCodeException 相同的父類別（內部類別無法直接建立）
+     */
+    private static HttpStatusCodeException circuitBreakerStatus(HttpStatusCode status) {
+        return new HttpStatusCodeException(status) {
+        };
+    }
+}
@@ -0,0 +1,69 @@
+package tw.com.tymgateway.config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+
+import tw.com.tymgateway.config.RouteAccessPolicy.Access;
+
+/**
+ * 路由存取規則每個請求的判斷成本：逐條比對（與 {@code pathMatchers} 鏈相同）與前綴樹查詢
+ *
+ * <p>使用 {@link SecurityConfig#routeAccessPolicy()} 的正式規則表，路徑涵蓋最前面的規則、
+ * 中段的規則、最後一條規則與都不符合而落到預設值的情況。執行方式見
+ * {@code docs/performance/ROUTE-ACCESS-BENCHMARK.md}。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RouteAccessPolicyBenchmark {
+
+    @Param({
+        "GET /tymg/health/liveness",
+        "GET /tymg/people/names",
+        "PATCH /tymg/weapons/1",
+        "GET /tymg/ckeditor/upload",
+        "GET /tymg/unknown/resource"
+    })
+    public String request;
+
+    private RouteAccessPolicy policy;
+    private HttpMethod method;
+    private PathContainer path;
+
+    @Setup
+    public void setUp() {
+        policy = new SecurityConfig().routeAccessPolicy();
+        int space = request.indexOf(' ');
+        method = HttpMethod.valueOf(request.substring(0, space));
+        path = PathContainer.parsePath(request.substring(space + 1));
+        if (policy.lookup(method, path) != policy.decideOrdered(method, path)) {
+            throw new IllegalStateException("前綴樹與逐條比對結果不一致: " + request);
+        }
+    }
+
+    @Benchmark
+    public Access orderedPathMatchers() {
+        return policy.decideOrdered(method, path);
+    }
+
+    @Benchmark
+    public Access prefixTrieLookup() {
+        return policy.lookup(method, path);
+    }
+}
@@ -0,0 +1,54 @@
+package tw.com.tymgateway.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+
+import tw.com.tymgateway.config.RouteAccessPolicy.Access;
+
+/**
+ * 路由存取規則前綴樹測試
+ */
+class RouteAccessPolicyTest {
+
+    private final RouteAccessPolicy policy = new SecurityConfig().routeAccessPolicy();
+
+    @Test
+    void gatewayRulesMatchOrderedEvaluation() {
+        assertTrue(policy.verify().isEmpty());
+    }
+
+    @Test
+    void decidesGatewayRoutes() {
+        assertEquals(Access.PERMIT_ALL, decide(HttpMethod.GET, "/tymg/people/names"));
+        assertEquals(Access.PERMIT_ALL, decide(HttpMethod.DELETE, "/tymg/weapons/1"));
+        assertEquals(Access.AUTHENTICATED, decide(HttpMethod.PATCH, "/tymg/weapons/1"));
+        assertEquals(Access.PERMIT_ALL, decide(HttpMethod.OPTIONS, "/tymg/api/anything"));
+        assertEquals(Access.AUTHENTICATED, decide(HttpMethod.GET, "/tymg/api/anything"));
+        assertEquals(Access.PERMIT_ALL, decide(HttpMethod.GET, "/swagger-ui.html"));
+        assertEquals(Access.AUTHENTICATED, decide(HttpMethod.GET, "/swagger-ui.html/"));
+        assertEquals(Access.AUTHENTICATED, decide(HttpMethod.GET, "/tymg/peoplex"));
+        assertEquals(Access.AUTHENTICATED, decide(HttpMethod.GET, "/tymg//people/names"));
+    }
+
+    @Test
+    void firstDeclaredRuleWins() {
+        RouteAccessPolicy ordered = RouteAccessPolicy.builder()
+                .authenticated("/a/b/**")
+                .permitAll("/a/**")
+                .permitAll(HttpMethod.GET, "/a/b/c")
+                .build(Access.AUTHENTICATED);
+
+        assertTrue(ordered.verify().isEmpty());
+        assertEquals(Access.AUTHENTICATED, ordered.decide(HttpMethod.GET, PathContainer.parsePath("/a/b/c")));
+        assertEquals(Access.PERMIT_ALL, ordered.decide(HttpMethod.GET, PathContainer.parsePath("/a/c")));
+        assertEquals(Access.PERMIT_ALL, ordered.decide(HttpMethod.GET, PathContainer.parsePath("/a")));
+    }
+
+    private Access decide(HttpMethod method, String path) {
+        return policy.decide(method, PathContainer.parsePath(path));
+    }
+}
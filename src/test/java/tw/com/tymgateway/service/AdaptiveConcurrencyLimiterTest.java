@@ -0,0 +1,220 @@
+package tw.com.tymgateway.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+/**
+ * 後端自適應併發限制器測試
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final String GROUP = "weapons";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(meterRegistry);
+    private final AtomicLong nowNanos = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "initialLimit", 20);
+        ReflectionTestUtils.setField(limiter, "minLimit", 4);
+        ReflectionTestUtils.setField(limiter, "maxLimit", 200);
+        ReflectionTestUtils.setField(limiter, "rttTolerance", 2.0);
+        ReflectionTestUtils.setField(limiter, "smoothing", 0.2);
+        ReflectionTestUtils.setField(limiter, "backoffRatio", 0.9);
+        ReflectionTestUtils.setField(limiter, "maxQueueSize", 10);
+        ReflectionTestUtils.setField(limiter, "maxQueueWaitMs", 1000L);
+        // RTT 固定為 advance 的時間，不受 JIT 與排程影響
+        LongSupplier clock = nowNanos::get;
+        ReflectionTestUtils.setField(limiter, "nanoClock", clock);
+    }
+
+    @Test
+    void limitGrowsOnFastSuccessesNearTheLimit() {
+        for (int round = 0; round < 5; round++) {
+            List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+            // 每輪用滿目前的上限，才會放寬（閒置時不放寬）
+            int slots = round == 0 ? 20 : (int) limit();
+            for (int i = 0; i < slots; i++) {
+                permits.add(limiter.acquire(GROUP).block());
+            }
+            advance();
+            permits.forEach(permit -> permit.release(false));
+        }
+
+        assertTrue(limit() > 20, "limit=" + limit());
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void clientErrorsDoNotShrinkTheLimit() {
+        for (int i = 0; i < 10; i++) {
+            StepVerifier.create(limiter.execute(GROUP, () -> {
+                        advance();
+                        return Mono.error(WebClientResponseException.create(404, "Not Found", null, null, null));
+                    }))
+                    .expectError(WebClientResponseException.class)
+                    .verify();
+        }
+
+        assertEquals(20, limit(), 0.0001);
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void backendFailuresShrinkTheLimitDownToMin() {
+        StepVerifier.create(limiter.execute(GROUP, () -> {
+                    advance();
+                    return Mono.error(WebClientResponseException.create(503, "Service Unavailable", null, null, null));
+                }))
+                .expectError(WebClientResponseException.class)
+                .verify();
+        assertEquals(18, limit(), 0.0001);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.execute(GROUP, () -> Mono.error(new TimeoutException()))
+                    .onErrorResume(error -> Mono.empty())
+                    .block();
+        }
+        assertEquals(4, limit(), 0.0001);
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void queuedWaiterIsReleasedWhenPermitFreesUp() {
+        ReflectionTestUtils.setField(limiter, "initialLimit", 1);
+        ReflectionTestUtils.setField(limiter, "minLimit", 1);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire(GROUP).block();
+
+        StepVerifier.create(limiter.acquire(GROUP))
+                .then(() -> {
+                    assertEquals(1, queued());
+                    first.release(false);
+                })
+                .assertNext(permit -> permit.release(false))
+                .verifyComplete();
+
+        assertEquals(0, queued());
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void queuedWaiterTimesOutAndDoesNotTakeALaterPermit() {
+        ReflectionTestUtils.setField(limiter, "initialLimit", 1);
+        ReflectionTestUtils.setField(limiter, "minLimit", 1);
+        ReflectionTestUtils.setField(limiter, "maxQueueWaitMs", 50L);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire(GROUP).block();
+
+        StepVerifier.create(limiter.acquire(GROUP))
+                .expectError(AdaptiveConcurrencyLimiter.LimitExceededException.class)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(0, queued());
+
+        first.release(false);
+        assertEquals(0, inFlight());
+        StepVerifier.create(limiter.acquire(GROUP))
+                .assertNext(permit -> permit.release(false))
+                .verifyComplete();
+    }
+
+    @Test
+    void fullQueueRejectsImmediately() {
+        ReflectionTestUtils.setField(limiter, "initialLimit", 1);
+        ReflectionTestUtils.setField(limiter, "minLimit", 1);
+        ReflectionTestUtils.setField(limiter, "maxQueueSize", 1);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire(GROUP).block();
+        Disposable waiting = limiter.acquire(GROUP).subscribe();
+
+        StepVerifier.create(limiter.acquire(GROUP))
+                .expectError(AdaptiveConcurrencyLimiter.LimitExceededException.class)
+                .verify(Duration.ofSeconds(1));
+
+        waiting.dispose();
+        first.release(false);
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void cancelledCallAbandonsItsPermit() {
+        StepVerifier.create(limiter.execute(GROUP, Mono::never))
+                .expectSubscription()
+                .then(() -> assertEquals(1, inFlight()))
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, inFlight());
+        assertEquals(20, limit(), 0.0001);
+    }
+
+    @Test
+    void cancelledWaiterDoesNotLeakAPermit() {
+        ReflectionTestUtils.setField(limiter, "initialLimit", 1);
+        ReflectionTestUtils.setField(limiter, "minLimit", 1);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire(GROUP).block();
+
+        Disposable waiting = limiter.acquire(GROUP).subscribe();
+        assertEquals(1, queued());
+        waiting.dispose();
+        assertEquals(0, queued());
+
+        first.release(false);
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void releasingTwiceCountsOnce() {
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(GROUP).block();
+        permit.release(false);
+        permit.release(true);
+        permit.abandon();
+
+        assertEquals(0, inFlight());
+        assertEquals(20, limit(), 0.0001);
+    }
+
+    @Test
+    void zeroRttDoesNotBreakTheLimit() {
+        limiter.acquire(GROUP).block().release(false);
+        limiter.acquire(GROUP).block().release(false);
+
+        assertEquals(20, limit(), 0.0001);
+    }
+
+    private void advance() {
+        nowNanos.addAndGet(1_000_000);
+    }
+
+    private double limit() {
+        return gauge("gateway.concurrency.limit");
+    }
+
+    private double inFlight() {
+        return gauge("gateway.concurrency.inflight");
+    }
+
+    private double queued() {
+        return gauge("gateway.concurrency.queued");
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tag("group", GROUP).gauge().value();
+    }
+}
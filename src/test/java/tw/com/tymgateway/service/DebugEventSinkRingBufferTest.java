@@ -0,0 +1,135 @@
+package tw.com.tymgateway.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * 除錯事件 ring buffer 測試
+ */
+class DebugEventSinkRingBufferTest {
+
+    @ParameterizedTest
+    @CsvSource({
+        "1, 4",
+        "2, 4",
+        "4, 4",
+        "5, 8",
+        "1000, 1024",
+        "1024, 1024",
+        "1025, 2048"
+    })
+    void capacityIsRoundedUpToAPowerOfTwo(int requested, int expected) {
+        assertEquals(expected, new DebugEventSink.RingBuffer<Integer>(requested).capacity());
+    }
+
+    @Test
+    void offerReturnsFalseWhenFull() {
+        DebugEventSink.RingBuffer<Integer> buffer = new DebugEventSink.RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+
+        assertFalse(buffer.offer(4));
+
+        assertEquals(0, buffer.poll());
+        assertTrue(buffer.offer(5));
+        assertFalse(buffer.offer(6));
+    }
+
+    @Test
+    void pollOnEmptyBufferReturnsNull() {
+        DebugEventSink.RingBuffer<Integer> buffer = new DebugEventSink.RingBuffer<>(4);
+        assertNull(buffer.poll());
+
+        buffer.offer(1);
+        assertEquals(1, buffer.poll());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void keepsFifoOrderAcrossWrapAround() {
+        DebugEventSink.RingBuffer<Integer> buffer = new DebugEventSink.RingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        // 每輪放 3 取 3，讓讀寫位置多次繞過陣列結尾
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(buffer.offer(next++));
+            }
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected++, buffer.poll());
+            }
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void concurrentProducersLoseAndDuplicateNothing() throws Exception {
+        int producers = 4;
+        int perProducer = 20_000;
+        DebugEventSink.RingBuffer<Integer> buffer = new DebugEventSink.RingBuffer<>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int base = p * perProducer;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        // buffer 滿時重試，確保每個值最終都被放入
+                        while (!buffer.offer(base + i)) {
+                            Thread.yield();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            int total = producers * perProducer;
+            boolean[] seen = new boolean[total];
+            int[] lastPerProducer = new int[producers];
+            Arrays.fill(lastPerProducer, -1);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            int received = 0;
+            while (received < total) {
+                Integer value = buffer.poll();
+                if (value == null) {
+                    assertTrue(System.nanoTime() < deadline, "只收到 " + received + " 筆");
+                    Thread.yield();
+                    continue;
+                }
+                assertFalse(seen[value], "重複: " + value);
+                seen[value] = true;
+                // 同一生產者的事件維持放入順序
+                int producer = value / perProducer;
+                assertTrue(value > lastPerProducer[producer], "順序錯亂: " + value);
+                lastPerProducer[producer] = value;
+                received++;
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+
+            assertNull(buffer.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
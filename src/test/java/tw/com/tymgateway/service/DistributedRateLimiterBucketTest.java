@@ -0,0 +1,122 @@
+package tw.com.tymgateway.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 本地 token bucket 與 Redis 用量同步測試
+ */
+class DistributedRateLimiterBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final int BURST = 5;
+
+    private final DistributedRateLimiter.Bucket bucket = new DistributedRateLimiter.Bucket(BURST, 0);
+
+    @Test
+    void allowsBurstThenRejectsWithRetryAfter() {
+        assertEquals(BURST, consumeAll(1.0, 0));
+
+        DistributedRateLimiter.Decision rejected = bucket.tryConsume(1.0, BURST, 0);
+        assertFalse(rejected.allowed());
+        assertEquals(1, rejected.retryAfterSeconds());
+    }
+
+    @Test
+    void retryAfterCoversTheMissingToken() {
+        consumeAll(0.1, 0);
+
+        assertEquals(10, bucket.tryConsume(0.1, BURST, 0).retryAfterSeconds());
+        // 4 秒後補回 0.4 個 token，還差 0.6 個
+        assertEquals(6, bucket.tryConsume(0.1, BURST, 4 * SECOND).retryAfterSeconds());
+    }
+
+    @Test
+    void refillsByElapsedTime() {
+        consumeAll(1.0, 0);
+
+        assertEquals(2, consumeAll(1.0, 2 * SECOND + SECOND / 2));
+        // 剩下 0.5 個 token
+        assertEquals(1, bucket.tryConsume(1.0, BURST, 2 * SECOND + SECOND / 2).retryAfterSeconds());
+    }
+
+    @Test
+    void refillIsCappedAtBurst() {
+        consumeAll(1.0, 0);
+
+        assertEquals(BURST, consumeAll(1.0, 1000 * SECOND));
+    }
+
+    @Test
+    void drainPendingReturnsLocalUsageSinceLastSync() {
+        consumeAll(1.0, 0);
+        bucket.tryConsume(1.0, BURST, 0);
+
+        assertEquals(BURST, bucket.drainPending());
+        assertEquals(0, bucket.drainPending());
+    }
+
+    @Test
+    void markDirtyOnlyOnceUntilDrained() {
+        assertTrue(bucket.markDirty());
+        assertFalse(bucket.markDirty());
+        bucket.drainPending();
+        assertTrue(bucket.markDirty());
+    }
+
+    @Test
+    void firstSyncOnlyRecordsBaseline() {
+        bucket.applyGlobalTotal(1000, 0, BURST);
+
+        assertEquals(BURST, consumeAll(1.0, 0));
+    }
+
+    @Test
+    void subtractsOtherReplicasUsage() {
+        bucket.applyGlobalTotal(100, 0, BURST);
+        bucket.tryConsume(1.0, BURST, 0);
+        long own = bucket.drainPending();
+
+        // Redis 累計增加 3：本機 1、其他副本 2
+        bucket.applyGlobalTotal(103, own, BURST);
+
+        assertEquals(2, consumeAll(1.0, 0));
+    }
+
+    @Test
+    void ownUsageAloneDoesNotReduceTokens() {
+        bucket.applyGlobalTotal(100, 0, BURST);
+        bucket.tryConsume(1.0, BURST, 0);
+        bucket.applyGlobalTotal(101, bucket.drainPending(), BURST);
+
+        assertEquals(BURST - 1, consumeAll(1.0, 0));
+    }
+
+    @Test
+    void otherReplicasUsageIsFlooredAtMinusBurst() {
+        bucket.applyGlobalTotal(100, 0, BURST);
+        bucket.applyGlobalTotal(100_000, 0, BURST);
+
+        DistributedRateLimiter.Decision rejected = bucket.tryConsume(1.0, BURST, 0);
+        assertFalse(rejected.allowed());
+        // tokens = -5，需要補回 6 個才能放行
+        assertEquals(BURST + 1, rejected.retryAfterSeconds());
+        assertEquals(1, consumeAll(1.0, (BURST + 1) * SECOND));
+    }
+
+    /**
+     * 在同一時間點連續取用直到被拒絕
+     *
+     * @return 放行的次數
+     */
+    private int consumeAll(double replenishPerSecond, long nowNanos) {
+        int allowed = 0;
+        while (bucket.tryConsume(replenishPerSecond, BURST, nowNanos).allowed()) {
+            allowed++;
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,109 @@
+package tw.com.tymgateway.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+/**
+ * 響應快取 Cache-Control 規則測試（{@link ResponseCache#cacheTtl} 也供圖片快取使用）
+ */
+class ResponseCacheTtlTest {
+
+    private static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+
+    static Stream<Arguments> cacheTtlCases() {
+        return Stream.of(
+                // Cache-Control, Set-Cookie, Authorization, 預期秒數（null 表示不快取）
+                Arguments.of(null, false, false, 30L),
+                Arguments.of("max-age=60", false, false, 60L),
+                Arguments.of("max-age=\"45\"", false, false, 45L),
+                Arguments.of("max-age=60, s-maxage=120", false, false, 120L),
+                Arguments.of("s-maxage=120, max-age=60", false, false, 120L),
+                Arguments.of("max-age=abc", false, false, 30L),
+                Arguments.of("max-age=0", false, false, null),
+                Arguments.of("no-store", false, false, null),
+                Arguments.of("no-cache", false, false, null),
+                Arguments.of("private, max-age=60", false, false, null),
+                Arguments.of("public, No-Store", false, false, null),
+                Arguments.of("max-age=60", true, false, null),
+                Arguments.of("public, max-age=60", true, false, null),
+                Arguments.of(null, false, true, null),
+                Arguments.of("max-age=60", false, true, null),
+                Arguments.of("public", false, true, 30L),
+                Arguments.of("public, max-age=60", false, true, 60L),
+                Arguments.of("public, private", false, true, null));
+    }
+
+    @ParameterizedTest
+    @MethodSource("cacheTtlCases")
+    void cacheTtl(String cacheControl, boolean setCookie, boolean authorization, Long expectedSeconds) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/tymg/weapons");
+        if (authorization) {
+            request.header(HttpHeaders.AUTHORIZATION, "Bearer token");
+        }
+        HttpHeaders responseHeaders = new HttpHeaders();
+        if (cacheControl != null) {
+            responseHeaders.setCacheControl(cacheControl);
+        }
+        if (setCookie) {
+            responseHeaders.add(HttpHeaders.SET_COOKIE, "SESSION=1");
+        }
+
+        Optional<Duration> ttl = ResponseCache.cacheTtl(request.build(), responseHeaders, DEFAULT_TTL);
+
+        assertEquals(Optional.ofNullable(expectedSeconds).map(Duration::ofSeconds), ttl);
+    }
+
+    static Stream<Arguments> defaultTtlCases() {
+        return Stream.of(
+                Arguments.of(Duration.ZERO, null, null),
+                Arguments.of(Duration.ofSeconds(-1), null, null),
+                Arguments.of(Duration.ofSeconds(-1), "max-age=10", 10L),
+                Arguments.of(Duration.ZERO, "s-maxage=5", 5L));
+    }
+
+    @ParameterizedTest
+    @MethodSource("defaultTtlCases")
+    void nonPositiveDefaultCachesOnlyExplicitMaxAge(Duration defaultTtl, String cacheControl, Long expectedSeconds) {
+        HttpHeaders responseHeaders = new HttpHeaders();
+        if (cacheControl != null) {
+            responseHeaders.setCacheControl(cacheControl);
+        }
+
+        Optional<Duration> ttl = ResponseCache.cacheTtl(
+                MockServerHttpRequest.get("/tymg/deckofcards/state").build(), responseHeaders, defaultTtl);
+
+        assertEquals(Optional.ofNullable(expectedSeconds).map(Duration::ofSeconds), ttl);
+    }
+
+    static Stream<Arguments> bypassCases() {
+        return Stream.of(
+                Arguments.of(null, null, false),
+                Arguments.of("max-age=0", null, false),
+                Arguments.of("no-cache", null, true),
+                Arguments.of("No-Store", null, true),
+                Arguments.of(null, "no-cache", true));
+    }
+
+    @ParameterizedTest
+    @MethodSource("bypassCases")
+    void bypassRequested(String cacheControl, String pragma, boolean expected) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/tymg/weapons");
+        if (cacheControl != null) {
+            request.header(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+        if (pragma != null) {
+            request.header(HttpHeaders.PRAGMA, pragma);
+        }
+
+        assertEquals(expected, ResponseCache.bypassRequested(request.build()));
+    }
+}
@@ -0,0 +1,130 @@
+package tw.com.tymgateway.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+/**
+ * Refresh token 請求合併測試
+ */
+class TokenRefreshCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TokenRefreshCoalescer coalescer = new TokenRefreshCoalescer(meterRegistry, 10, 100);
+
+    @Test
+    void concurrentRefreshesShareOneGrant() throws Exception {
+        int callers = 16;
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<Map<String, Object>> response = Sinks.one();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Mono<Map<String, Object>>>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return coalescer.refresh("refresh-1", () -> {
+                        calls.incrementAndGet();
+                        return response.asMono();
+                    });
+                }));
+            }
+            start.countDown();
+            List<Mono<Map<String, Object>>> results = new ArrayList<>();
+            for (Future<Mono<Map<String, Object>>> future : futures) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+
+            StepVerifier.create(Flux.merge(results))
+                    .then(() -> response.tryEmitValue(Map.of("access_token", "token-1")))
+                    .expectNextCount(callers)
+                    .verifyComplete();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(1, counter("grant"));
+        assertEquals(callers - 1, counter("coalesced"));
+    }
+
+    @Test
+    void failedGrantIsNotHeldAndLeavesNoInflightEntry() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<Map<String, Object>> failing = coalescer.refresh("refresh-1", () -> {
+            calls.incrementAndGet();
+            return Mono.error(new IllegalStateException("invalid_grant"));
+        });
+
+        StepVerifier.create(failing)
+                .expectErrorMessage("invalid_grant")
+                .verify();
+        assertTrue(inflight().isEmpty());
+
+        StepVerifier.create(coalescer.refresh("refresh-1", () -> grant(calls)))
+                .expectNext(Map.of("access_token", "token-2"))
+                .verifyComplete();
+        assertEquals(2, calls.get());
+        assertEquals(0, counter("held"));
+        assertTrue(inflight().isEmpty());
+    }
+
+    @Test
+    void replayAfterLogoutIsNotServedFromHold() {
+        AtomicInteger calls = new AtomicInteger();
+        StepVerifier.create(coalescer.refresh("refresh-1", () -> grant(calls)))
+                .expectNext(Map.of("access_token", "token-1"))
+                .verifyComplete();
+
+        coalescer.invalidate("refresh-1");
+
+        StepVerifier.create(coalescer.refresh("refresh-1",
+                        () -> Mono.error(new IllegalStateException("invalid_grant"))))
+                .expectErrorMessage("invalid_grant")
+                .verify();
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void heldResultIsReusedWithoutLogout() {
+        AtomicInteger calls = new AtomicInteger();
+        coalescer.refresh("refresh-1", () -> grant(calls)).block();
+
+        StepVerifier.create(coalescer.refresh("refresh-1", () -> grant(calls)))
+                .expectNext(Map.of("access_token", "token-1"))
+                .verifyComplete();
+        assertEquals(1, calls.get());
+    }
+
+    private double counter(String result) {
+        return meterRegistry.get("gateway.keycloak.refresh").tag("result", result).counter().count();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> inflight() {
+        return (Map<String, ?>) ReflectionTestUtils.getField(coalescer, "inflight");
+    }
+
+    private static Mono<Map<String, Object>> grant(AtomicInteger calls) {
+        return Mono.fromSupplier(() -> Map.of("access_token", "token-" + calls.incrementAndGet()));
+    }
+}